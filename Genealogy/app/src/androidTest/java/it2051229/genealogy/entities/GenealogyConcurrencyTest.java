@@ -0,0 +1,215 @@
+package it2051229.genealogy.entities;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Edits the genealogy on several threads while others query it, and checks that every reader
+ * sees a consistent genealogy
+ */
+public class GenealogyConcurrencyTest extends TestCase {
+    private static final int PEOPLE = 200;
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int OPERATIONS = 3000;
+
+    /**
+     * Run writers and readers together, any failure on any thread fails the test
+     */
+    public void testConcurrentEditsAndQueries() throws Exception {
+        final Genealogy genealogy = new Genealogy();
+
+        for(int i = 0; i < PEOPLE; i++) {
+            genealogy.addPerson("Person " + i);
+        }
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Thread> threads = new ArrayList<>();
+
+        for(int i = 0; i < WRITERS + READERS; i++) {
+            final boolean writer = i < WRITERS;
+            final Random random = new Random(i);
+
+            threads.add(new Thread(new Runnable() {
+                // Wait for everyone, then edit or query until done or something fails
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+
+                        for(int j = 0; j < OPERATIONS && failure.get() == null; j++) {
+                            if(writer) {
+                                edit(genealogy, random);
+                            } else {
+                                query(genealogy, random);
+                            }
+                        }
+                    } catch(Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+
+        for(Thread thread : threads) {
+            thread.start();
+        }
+
+        start.countDown();
+
+        for(Thread thread : threads) {
+            thread.join(120000);
+            assertFalse("A thread is stuck", thread.isAlive());
+        }
+
+        if(failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        checkInvariants(genealogy);
+    }
+
+    /**
+     * Make a random edit, an edit made of several steps holds the write lock so it is one change
+     */
+    private static void edit(Genealogy genealogy, Random random) {
+        String name = "Person " + random.nextInt(PEOPLE * 2);
+        String otherName = "Person " + random.nextInt(PEOPLE * 2);
+
+        switch(random.nextInt(8)) {
+            case 0:
+                genealogy.addPerson(name);
+                break;
+
+            case 1:
+                genealogy.removePerson(name);
+                break;
+
+            case 2:
+                genealogy.updateName(name, otherName);
+                break;
+
+            case 3:
+                genealogy.endEdit();
+                genealogy.undo();
+                break;
+
+            default:
+                Lock lock = genealogy.getLock().writeLock();
+                lock.lock();
+
+                try {
+                    Person person = genealogy.getPerson(name);
+                    Person relative = genealogy.getPerson(otherName);
+
+                    if(person == null || person == relative) {
+                        break;
+                    }
+
+                    if(random.nextBoolean()) {
+                        person.setDad(relative);
+                    } else if(random.nextBoolean()) {
+                        person.setMom(relative);
+                    } else {
+                        person.setSpouse(relative);
+                    }
+
+                    person.setNotes("Notes " + random.nextInt(10));
+                } finally {
+                    lock.unlock();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Make a random query, and sometimes check everything at once
+     */
+    private static void query(Genealogy genealogy, Random random) {
+        String name = "Person " + random.nextInt(PEOPLE * 2);
+
+        switch(random.nextInt(8)) {
+            case 0:
+                checkInvariants(genealogy);
+                break;
+
+            case 1:
+                for(String found : genealogy.getNamesContaining("son " + random.nextInt(10))) {
+                    assertTrue(found.startsWith("Person "));
+                }
+                break;
+
+            case 2:
+                assertTrue(genealogy.getCompletions("pers", 10).size() <= 10);
+                break;
+
+            case 3:
+                genealogy.getSiblingsOf(name);
+                genealogy.getGrandParentsOf(name);
+                genealogy.getGrandChildrenOf(name);
+                break;
+
+            case 4:
+                genealogy.getNamesHavingPartialConnections();
+                break;
+
+            case 5:
+                genealogy.buildGraph();
+                break;
+
+            default:
+                Person person = genealogy.getPerson(name);
+
+                // The person may be removed right after it was found, its view is then empty
+                if(person != null) {
+                    person.getDad();
+                    person.getNotes();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Check under the read lock that the names, people, relatives and children agree
+     */
+    private static void checkInvariants(Genealogy genealogy) {
+        Lock lock = genealogy.getLock().readLock();
+        lock.lock();
+
+        try {
+            ArrayList<String> names = genealogy.getNames();
+            HashSet<String> uniqueNames = new HashSet<>(names);
+
+            assertEquals("Names are unique", names.size(), uniqueNames.size());
+            assertEquals("Searching nothing finds everyone", names.size(), genealogy.getNamesContaining("").size());
+
+            for(String name : names) {
+                Person person = genealogy.getPerson(name);
+
+                assertNotNull(person);
+                assertEquals(name, person.getName());
+
+                for(Person relative : new Person[] { person.getDad(), person.getMom(), person.getSpouse() }) {
+                    assertTrue("Relatives exist", relative == null || uniqueNames.contains(relative.getName()));
+                }
+
+                if(person.getDad() != null) {
+                    assertTrue("Children are indexed", genealogy.getChildrenOf(person.getDad().getName()).contains(name));
+                }
+
+                if(person.getMom() != null) {
+                    assertTrue("Children are indexed", genealogy.getChildrenOf(person.getMom().getName()).contains(name));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package it2051229.genealogy.entities;
+
+import junit.framework.TestCase;
+
+/**
+ * Names how relatives are related, and checks that people are only half related when the other
+ * parents below their common ancestor are both known and differ
+ */
+public class KinshipTest extends TestCase {
+    private Genealogy genealogy;
+
+    /**
+     * Start every test with an empty genealogy
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        genealogy = new Genealogy();
+    }
+
+    /**
+     * Children of the same dad and mom are full siblings, whether the parents are spouses or not
+     */
+    public void testFullSiblings() {
+        link("Child 1", "Dad", "Mom");
+        link("Child 2", "Dad", "Mom");
+
+        assertEquals("Sibling", name("Child 1", "Child 2"));
+
+        genealogy.getPerson("Dad").setSpouse(genealogy.getPerson("Mom"));
+
+        assertEquals("Sibling", name("Child 1", "Child 2"));
+    }
+
+    /**
+     * Children of the same dad by different moms are half siblings, even if the dad has no spouse
+     */
+    public void testHalfSiblings() {
+        link("Child 1", "Dad", "Mom 1");
+        link("Child 2", "Dad", "Mom 2");
+
+        assertEquals("Half-sibling", name("Child 1", "Child 2"));
+        assertTrue(kinship("Child 1", "Child 2").isHalf());
+    }
+
+    /**
+     * Children with only their dad known aren't half siblings just because the dad has a spouse
+     */
+    public void testUnknownOtherParent() {
+        link("Child 1", "Dad", null);
+        link("Child 2", "Dad", null);
+        link("Spouse", null, null);
+        genealogy.getPerson("Dad").setSpouse(genealogy.getPerson("Spouse"));
+
+        assertEquals("Sibling", name("Child 1", "Child 2"));
+
+        // Knowing the mom of only one of them still doesn't tell
+        genealogy.getPerson("Child 1").setMom(genealogy.getPerson("Spouse"));
+
+        assertEquals("Sibling", name("Child 1", "Child 2"));
+    }
+
+    /**
+     * The half sibling of a parent is a half aunt or uncle, the other way round a half niece or nephew
+     */
+    public void testHalfAuntOrUncle() {
+        link("Parent", "Grandpa", "Grandma 1");
+        link("Uncle", "Grandpa", "Grandma 2");
+        link("Child", "Parent", "Other Parent");
+
+        assertEquals("Half-aunt or half-uncle", name("Child", "Uncle"));
+        assertEquals("Half-niece or half-nephew", name("Uncle", "Child"));
+
+        genealogy.getPerson("Uncle").setMom(genealogy.getPerson("Grandma 1"));
+
+        assertEquals("Aunt or uncle", name("Child", "Uncle"));
+    }
+
+    /**
+     * Children of half siblings are half first cousins, the other parents of the cousins don't count
+     */
+    public void testHalfCousins() {
+        link("Parent 1", "Grandpa", "Grandma 1");
+        link("Parent 2", "Grandpa", "Grandma 2");
+        link("Cousin 1", "Parent 1", "Other Parent 1");
+        link("Cousin 2", "Parent 2", "Other Parent 2");
+
+        assertEquals("Half first cousin", name("Cousin 1", "Cousin 2"));
+
+        genealogy.getPerson("Parent 2").setMom(genealogy.getPerson("Grandma 1"));
+
+        assertEquals("First cousin", name("Cousin 1", "Cousin 2"));
+    }
+
+    /**
+     * Add a person if missing and link them to their dad and mom, also added if missing
+     */
+    private void link(String name, String dadName, String momName) {
+        Person person = add(name);
+
+        if(dadName != null) {
+            person.setDad(add(dadName));
+        }
+
+        if(momName != null) {
+            person.setMom(add(momName));
+        }
+    }
+
+    /**
+     * Get a person, adding them first if missing
+     */
+    private Person add(String name) {
+        genealogy.addPerson(name);
+        return genealogy.getPerson(name);
+    }
+
+    /**
+     * Work out what the second person is to the first one
+     */
+    private Kinship kinship(String fromName, String toName) {
+        return genealogy.buildKinshipIndex().getKinship(fromName, toName);
+    }
+
+    /**
+     * Get the name of what the second person is to the first one
+     */
+    private String name(String fromName, String toName) {
+        return kinship(fromName, toName).getName();
+    }
+}
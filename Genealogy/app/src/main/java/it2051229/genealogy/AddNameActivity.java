@@ -4,6 +4,7 @@ import android.content.Intent;
 import android.support.v7.app.ActionBarActivity;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.AutoCompleteTextView;
 import android.widget.EditText;
 import android.widget.Toast;
 
@@ -11,6 +12,7 @@ import java.util.ArrayList;
 
 import it2051229.genealogy.entities.Application;
 import it2051229.genealogy.entities.Genealogy;
+import it2051229.genealogy.entities.GenealogySession;
 import it2051229.genealogy.entities.Person;
 
 
@@ -26,7 +28,12 @@ public class AddNameActivity extends ActionBarActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_add_name);
 
-        genealogy = (Genealogy)getIntent().getSerializableExtra("genealogy");
+        genealogy = GenealogySession.get(this).getGenealogy();
+
+        // Suggest the names already in the record while typing a relative's name
+        for(int id : new int[] { R.id.editTextSpouseName, R.id.editTextDadName, R.id.editTextMomName }) {
+            ((AutoCompleteTextView)findViewById(id)).setAdapter(new NameCompletionAdapter(this, genealogy));
+        }
     }
 
     /**
@@ -117,10 +124,11 @@ public class AddNameActivity extends ActionBarActivity {
             person.setMom(genealogy.getPerson(momName));
         }
 
+        GenealogySession.get(this).changed();
+
         // Signal the main activity to add the newly added person
         Intent intent = getIntent();
         intent.putExtra("name", genealogy.getPerson(name).getName());
-        intent.putExtra("genealogy", genealogy);
         setResult(RESULT_OK, intent);
         finish();
     }
@@ -130,7 +138,6 @@ public class AddNameActivity extends ActionBarActivity {
      */
     public void buttonSearchDadNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE + 1);
     }
 
@@ -139,7 +146,6 @@ public class AddNameActivity extends ActionBarActivity {
      */
     public void buttonSearchMomNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE + 2);
     }
 
@@ -148,7 +154,6 @@ public class AddNameActivity extends ActionBarActivity {
      */
     public void buttonSearchSpouseNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE + 3);
     }
 
@@ -1,31 +1,94 @@
 package it2051229.genealogy;
 
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v7.app.ActionBarActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.EditText;
-import android.widget.TextView;
+import android.widget.ListView;
 import android.widget.Toast;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+import it2051229.genealogy.entities.AncestorChart;
 import it2051229.genealogy.entities.Application;
+import it2051229.genealogy.entities.Chart;
+import it2051229.genealogy.entities.DescendantTree;
 import it2051229.genealogy.entities.Genealogy;
+import it2051229.genealogy.entities.GenealogySession;
+import it2051229.genealogy.entities.Person;
 
 public class BuildFamilyTreeActivity extends ActionBarActivity {
+    // Lines added to the list at a time, more are added while scrolling near the end
+    private static final int PAGE_SIZE = 100;
+
+    // Lines written to a saved chart at a time, the genealogy is locked for each of them
+    private static final int SAVE_PAGE_SIZE = 4096;
+
     private Genealogy genealogy;
+    private Chart chart;
+
+    // What the chart shown was built from, to build it again when it is saved
+    private String chartName;
+    private int chartGenerations;
+    private boolean chartIsAncestors;
+
+    // The lines shown and the name of the person on each line
+    private ArrayList<String> lines = new ArrayList<>();
+    private ArrayList<String> names = new ArrayList<>();
+    private ArrayAdapter<String> arrayAdapterLines;
 
     /**
-     * Build a graph so we can use it to build a family tree
+     * Initialize the list where the lines of the tree are shown as they are scrolled to
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_build_family_tree);
 
-        Bundle extras = getIntent().getExtras();
-        genealogy = (Genealogy)extras.getSerializable("genealogy");
+        genealogy = GenealogySession.get(this).getGenealogy();
+
+        arrayAdapterLines = new ArrayAdapter<>(this, R.layout.family_tree_line, lines);
 
-        ((EditText) findViewById(R.id.editTextFamilyTree)).setHorizontallyScrolling(true);
+        ListView listViewFamilyTree = (ListView) findViewById(R.id.listViewFamilyTree);
+        listViewFamilyTree.setAdapter(arrayAdapterLines);
+
+        listViewFamilyTree.setOnScrollListener(new AbsListView.OnScrollListener() {
+            // Nothing to do when scrolling starts or stops
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            // Add the next lines before the end of the list is reached
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if(chart != null && chart.hasNext() && firstVisibleItem + visibleItemCount >= totalItemCount - PAGE_SIZE / 2) {
+                    showMoreLines(PAGE_SIZE);
+                }
+            }
+        });
+
+        listViewFamilyTree.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            // Collapse or expand the children of the person tapped in a family tree
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                if(chart instanceof DescendantTree) {
+                    toggleChildren(names.get(position));
+                }
+            }
+        });
     }
 
     /**
@@ -33,7 +96,6 @@ public class BuildFamilyTreeActivity extends ActionBarActivity {
      */
     public void buttonSearchNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE);
     }
 
@@ -54,7 +116,22 @@ public class BuildFamilyTreeActivity extends ActionBarActivity {
      * Given the person's name, build the family tree of that person
      */
     public void buttonBuildFamilyTreeTapped(View view) {
+        buildChart(false);
+    }
+
+    /**
+     * Given the person's name, build the chart of that person's ancestors
+     */
+    public void buttonBuildAncestorChartTapped(View view) {
+        buildChart(true);
+    }
+
+    /**
+     * Build the chart of the person's descendants or ancestors over the generations entered
+     */
+    private void buildChart(boolean ancestors) {
         String name = ((EditText)findViewById(R.id.editTextFamilyTreeName)).getText().toString();
+        String generations = ((EditText)findViewById(R.id.editTextFamilyTreeGenerations)).getText().toString().trim();
 
         // Perform validation
         if(name.isEmpty()) {
@@ -62,13 +139,180 @@ public class BuildFamilyTreeActivity extends ActionBarActivity {
             return;
         }
 
-        if(genealogy.getPerson(name) == null) {
+        int generationCount = Integer.MAX_VALUE;
+
+        if(!generations.isEmpty()) {
+            try {
+                generationCount = Integer.parseInt(generations);
+            } catch(NumberFormatException e) {
+                Toast.makeText(this, "Please enter a smaller number of generations.", Toast.LENGTH_SHORT).show();
+                return;
+            }
+        }
+
+        Chart newChart = createChart(name, generationCount, ancestors);
+
+        if(newChart == null) {
             Toast.makeText(this, "The name " + name + " does not exist.", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Alright, person exists so we build the family tree
-        String familyTree = genealogy.buildFamilyTreeOf(name);
-        ((EditText) findViewById(R.id.editTextFamilyTree)).setText(familyTree);
+        chart = newChart;
+        chartName = name;
+        chartGenerations = generationCount;
+        chartIsAncestors = ancestors;
+
+        // Alright, person exists so we show the first lines of the chart
+        lines.clear();
+        names.clear();
+        showMoreLines(PAGE_SIZE);
+    }
+
+    /**
+     * Create a chart of the person's ancestors or descendants, null if the person doesn't exist
+     */
+    private Chart createChart(String name, int generations, boolean ancestors) {
+        if(ancestors) {
+            return genealogy.getAncestorChart(name, generations);
+        }
+
+        return genealogy.getDescendantTree(name, generations);
+    }
+
+    /**
+     * Collapse the children of the person if they are shown or show them again, the lines
+     * shown so far are written again so the list stays where it is
+     */
+    private void toggleChildren(String name) {
+        Person person = genealogy.getPerson(name);
+
+        if(person == null) {
+            return;
+        }
+
+        DescendantTree tree = (DescendantTree) chart;
+        tree.setCollapsed(person, !tree.isCollapsed(person));
+        tree.restart();
+
+        int lineCount = lines.size();
+        lines.clear();
+        names.clear();
+        showMoreLines(lineCount);
+    }
+
+    /**
+     * Add the next lines of the chart to the list
+     */
+    private void showMoreLines(int lineCount) {
+        StringBuilder line = new StringBuilder();
+
+        for(int i = 0; i < lineCount && chart.hasNext(); i++) {
+            line.setLength(0);
+            String name = chart.next(line);
+
+            // Someone removed since the chart was started has no line
+            if(name != null) {
+                lines.add(line.toString());
+                names.add(name);
+            }
+        }
+
+        arrayAdapterLines.notifyDataSetChanged();
+    }
+
+    /**
+     * Create the menu
+     */
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_build_family_tree, menu);
+
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    /**
+     * Handle the events of the menu
+     */
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if(item.getItemId() == R.id.menuSaveChart) {
+            menuSaveChartTapped();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Save the whole chart shown to the external storage, collapsed people included
+     */
+    private void menuSaveChartTapped() {
+        if(chart == null) {
+            Toast.makeText(this, "Please build a chart first.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // The chart shown keeps paging, so the saved one is a new one of its own
+        Chart savedChart = createChart(chartName, chartGenerations, chartIsAncestors);
+
+        if(savedChart == null) {
+            Toast.makeText(this, "The name " + chartName + " does not exist.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String fileName = (chartIsAncestors ? "Ancestors of " : "Family Tree of ") + genealogy.normalizeName(chartName) + ".txt";
+        new SaveChartTask(savedChart).execute(new File(Application.DIRECTORY, fileName));
+    }
+
+    /**
+     * Writes a chart to a file in the background a page at a time, so edits aren't held up for
+     * long while a large chart is saved
+     */
+    private class SaveChartTask extends AsyncTask<File, Void, Boolean> {
+        private Chart savedChart;
+        private Exception error;
+
+        /**
+         * Create a task saving the chart
+         */
+        public SaveChartTask(Chart savedChart) {
+            this.savedChart = savedChart;
+        }
+
+        /**
+         * Write the chart to the file, false if failed
+         */
+        @Override
+        protected Boolean doInBackground(File... files) {
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(files[0]), "UTF-8"), 64 * 1024);
+
+                try {
+                    while(savedChart.hasNext()) {
+                        savedChart.write(writer, SAVE_PAGE_SIZE);
+                    }
+                } finally {
+                    writer.close();
+                }
+
+                return true;
+            } catch(Exception e) {
+                error = e;
+                return false;
+            }
+        }
+
+        /**
+         * Tell how the saving went
+         */
+        @Override
+        protected void onPostExecute(Boolean saved) {
+            if(!saved) {
+                Log.e("SaveChartTask", error.getMessage());
+                Toast.makeText(BuildFamilyTreeActivity.this, "Failed to save the chart.", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(BuildFamilyTreeActivity.this, "Chart saved to your external storage.", Toast.LENGTH_SHORT).show();
+            }
+        }
     }
 }
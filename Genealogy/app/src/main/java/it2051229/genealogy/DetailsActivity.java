@@ -20,6 +20,7 @@ import java.util.ArrayList;
 
 import it2051229.genealogy.entities.Application;
 import it2051229.genealogy.entities.Genealogy;
+import it2051229.genealogy.entities.GenealogySession;
 import it2051229.genealogy.entities.Person;
 
 public class DetailsActivity extends ActionBarActivity {
@@ -38,7 +39,7 @@ public class DetailsActivity extends ActionBarActivity {
 
         String name = extras.getString("name");
 
-        genealogy = (Genealogy)extras.getSerializable("genealogy");
+        genealogy = GenealogySession.get(this).getGenealogy();
         person = genealogy.getPerson(name);
 
         ((TextView)findViewById(R.id.textViewName)).setText(name);
@@ -73,7 +74,7 @@ public class DetailsActivity extends ActionBarActivity {
      * Show the details of the person
      */
     private void showDetails() {
-        String details = "";
+        String details = "Generation: " + genealogy.getGeneration(person.getName()) + "\n\n";
 
         if(person.getSpouse() != null) {
             details += "Spouse: " + person.getSpouse().getName() + "\n\n";
@@ -130,7 +131,6 @@ public class DetailsActivity extends ActionBarActivity {
      */
     public void buttonSearchNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE);
     }
 
@@ -1,9 +1,10 @@
 package it2051229.genealogy;
 
 import android.app.AlertDialog;
-import android.content.Context;
+import android.app.ProgressDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Environment;
 import android.support.v7.app.ActionBarActivity;
 import android.os.Bundle;
@@ -22,27 +23,35 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.util.List;
 
 import it2051229.genealogy.entities.Application;
+import it2051229.genealogy.entities.ExportCodec;
+import it2051229.genealogy.entities.GedcomExportCodec;
+import it2051229.genealogy.entities.GedcomImporter;
 import it2051229.genealogy.entities.Genealogy;
-import it2051229.genealogy.entities.Person;
+import it2051229.genealogy.entities.GenealogyImporter;
+import it2051229.genealogy.entities.GenealogySession;
+import it2051229.genealogy.entities.JsonLinesExportCodec;
+import it2051229.genealogy.entities.MergePlan;
+import it2051229.genealogy.entities.NamesExporter;
+import it2051229.genealogy.entities.NamesImporter;
+import it2051229.genealogy.entities.ProgressListener;
+import it2051229.genealogy.entities.TextExportCodec;
 
 public class MainActivity extends ActionBarActivity {
+    private static final int MAX_REPORTED_CONFLICTS = 50;
 
     private ArrayList<String> arrayListNames;
     private ArrayAdapter<String> arrayAdapterNames;
 
+    private GenealogySession session;
     private Genealogy genealogy;
 
+    // Show the earlier generations first instead of the order the names were added in
+    private boolean sortedByGeneration;
+
     /**
      * Initialize everything that needs to be initialized before the start of program
      */
@@ -77,15 +86,8 @@ public class MainActivity extends ActionBarActivity {
             // Perform a filter
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                // Clear the old data
-                arrayAdapterNames.clear();
-
                 // Do a filter
-                String keyword = editTextFilterSearch.getText().toString().trim();
-
-                for(String name : genealogy.getNamesContaining(keyword)) {
-                    arrayAdapterNames.add(name);
-                }
+                showNames();
             }
 
             // Nothing to do here
@@ -101,38 +103,27 @@ public class MainActivity extends ActionBarActivity {
     }
 
     /**
-     * Load data from internal file
+     * Make sure every change is on the disk before the app can be stopped
      */
-    public void loadData() {
-        try {
-            FileInputStream fis = openFileInput("data.dat");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-
-            genealogy = new Genealogy((HashMap<String, Person>)ois.readObject());
+    @Override
+    protected void onPause() {
+        super.onPause();
+        session.flush();
+    }
 
-            fis.close();
-            ois.close();
-        } catch(Exception e) {
-            Log.e("loadData()", e.getMessage());
-            genealogy = new Genealogy();
-        }
+    /**
+     * Load data from internal files
+     */
+    public void loadData() {
+        session = GenealogySession.get(this);
+        genealogy = session.getGenealogy();
     }
 
     /**
-     * Save data to internal file
+     * Save the changes to internal files, the writing is done in the background
      */
     public void saveData() {
-        try {
-            FileOutputStream fos = openFileOutput("data.dat", Context.MODE_PRIVATE);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-
-            oos.writeObject(genealogy.getData());
-
-            oos.close();
-            fos.close();
-        } catch(Exception e) {
-            Log.e("saveData()", e.getMessage());
-        }
+        session.changed();
     }
 
     /**
@@ -176,7 +167,6 @@ public class MainActivity extends ActionBarActivity {
     private void detailsContextItemTapped(String name) {
         Intent intent = new Intent(this, DetailsActivity.class);
         intent.putExtra("name", name);
-        intent.putExtra("genealogy", genealogy);
         startActivity(intent);
     }
 
@@ -217,7 +207,6 @@ public class MainActivity extends ActionBarActivity {
         Intent intent = new Intent(this, UpdateNameActivity.class);
         intent.putExtra("name", name);
         intent.putExtra("list view index", selectedIndex);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.UPDATE_NAME_ACTIVITY_REQUEST_CODE);
     }
 
@@ -260,17 +249,82 @@ public class MainActivity extends ActionBarActivity {
             case R.id.menuQuestionAndAnswer:
                 menuQuestionAndAnswerTapped();
                 break;
+
+            case R.id.menuUndo:
+                menuUndoTapped();
+                break;
+
+            case R.id.menuRedo:
+                menuRedoTapped();
+                break;
+
+            case R.id.menuSortByGeneration:
+                menuSortByGenerationTapped(item);
+                break;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Revert the last edit and show the names again
+     */
+    private void menuUndoTapped() {
+        if(!genealogy.undo()) {
+            Toast.makeText(this, "There is nothing to undo.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        saveData();
+        showNames();
+    }
+
+    /**
+     * Make the last undone edit again and show the names again
+     */
+    private void menuRedoTapped() {
+        if(!genealogy.redo()) {
+            Toast.makeText(this, "There is nothing to redo.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        saveData();
+        showNames();
+    }
+
+    /**
+     * Show the names matching the filter
+     */
+    private void showNames() {
+        String keyword = ((EditText)findViewById(R.id.editTextFilterSearch)).getText().toString().trim();
+
+        ArrayList<String> names = genealogy.getNamesContaining(keyword);
+
+        if(sortedByGeneration) {
+            genealogy.sortByGeneration(names);
+        }
+
+        arrayAdapterNames.clear();
+
+        for(String name : names) {
+            arrayAdapterNames.add(name);
+        }
+    }
+
+    /**
+     * Switch between showing the names by generation and in the order they were added
+     */
+    private void menuSortByGenerationTapped(MenuItem item) {
+        sortedByGeneration = !sortedByGeneration;
+        item.setChecked(sortedByGeneration);
+        showNames();
+    }
+
     /**
      * Show the activity that would allow to add a new name
      */
     private void menuAddNameTapped() {
         Intent intent = new Intent(this, AddNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.ADD_NAME_ACTIVITY_REQUEST_CODE);
     }
 
@@ -279,7 +333,6 @@ public class MainActivity extends ActionBarActivity {
      */
     private void menuRelateNamesTapped() {
         Intent intent = new Intent(this, RelateNamesActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivity(intent);
     }
 
@@ -288,12 +341,11 @@ public class MainActivity extends ActionBarActivity {
      */
     private void menuBuildFamilyTreeTapped() {
         Intent intent = new Intent(this, BuildFamilyTreeActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivity(intent);
     }
 
     /**
-     * Export the genealogy database to SD card
+     * Export the genealogy database to SD card in the format chosen
      */
     private void menuExportNamesTapped() {
         // Stop if there are no SD card
@@ -302,127 +354,316 @@ public class MainActivity extends ActionBarActivity {
             return;
         }
 
-        // Create the file
-        File file = new File(Application.DIRECTORY, "Exported Names.txt");
-        file.delete();
+        final ExportCodec[] codecs = { new TextExportCodec(), new JsonLinesExportCodec(), new GedcomExportCodec() };
+
+        new AlertDialog.Builder(this)
+        .setTitle("Export Names")
+        .setItems(new String[] { "Text, can be imported", "JSON Lines", "GEDCOM, can be imported" }, new DialogInterface.OnClickListener() {
+            // Export in the format chosen
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                new ExportTask(codecs[which]).execute(new File(Application.DIRECTORY, codecs[which].getFileName()));
+            }
+        }).show();
+    }
+
+    /**
+     * Writes the export file in the background while showing how far it got, the export can be
+     * cancelled from the dialog
+     */
+    private class ExportTask extends AsyncTask<File, Integer, Boolean> {
+        private NamesExporter exporter = new NamesExporter();
+        private ExportCodec codec;
+        private ProgressDialog progressDialog;
+        private Exception error;
+
+        /**
+         * Create a task exporting in the format of the codec
+         */
+        public ExportTask(ExportCodec codec) {
+            this.codec = codec;
+        }
 
-        try {
-            PrintWriter outFile = new PrintWriter(new FileWriter(file));
+        /**
+         * Show the progress dialog
+         */
+        @Override
+        protected void onPreExecute() {
+            progressDialog = showProgressDialog("Export Names", "Exporting names...", new Runnable() {
+                // Stop writing, the old export is kept
+                @Override
+                public void run() {
+                    exporter.cancel();
+                }
+            });
+        }
 
-            // Print out all the names first
-            for(String name : genealogy.getNames()) {
-                outFile.println(name);
+        /**
+         * Write the genealogy to the file, false if cancelled or failed
+         */
+        @Override
+        protected Boolean doInBackground(File... files) {
+            try {
+                return exporter.write(genealogy, codec, files[0], new ProgressListener() {
+                    // Show the percentage written
+                    @Override
+                    public void onProgress(long done, long total) {
+                        publishProgress(total == 0 ? 100 : (int)(done * 100 / total));
+                    }
+                });
+            } catch(Exception e) {
+                error = e;
+                return false;
             }
+        }
 
-            outFile.println();
+        /**
+         * Show how far the export got
+         */
+        @Override
+        protected void onProgressUpdate(Integer... progress) {
+            progressDialog.setProgress(progress[0]);
+        }
 
-            // Print out the relationships for each name
-            for(String name : genealogy.getNames()) {
-                Person person = genealogy.getPerson(name);
+        /**
+         * Tell how the export went
+         */
+        @Override
+        protected void onPostExecute(Boolean exported) {
+            progressDialog.dismiss();
+
+            if(error != null) {
+                Log.e("ExportTask", error.getMessage());
+                Toast.makeText(MainActivity.this, "Oh snap! Developer error.", Toast.LENGTH_SHORT).show();
+            } else if(!exported) {
+                Toast.makeText(MainActivity.this, "Export cancelled.", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(MainActivity.this, "Names exported to your external storage.", Toast.LENGTH_SHORT).show();
+            }
+        }
+    }
 
-                outFile.println(name);
+    /**
+     * Tell what a merge changed and which differences were left as they are
+     */
+    private void showMergeReport(MergePlan mergePlan) {
+        StringBuilder message = new StringBuilder();
+        message.append("Added ").append(mergePlan.getAddedCount()).append(" people and filled in ")
+                .append(mergePlan.getChangedCount()).append(" relatives and notes.");
 
-                if(person.getSpouse() != null) {
-                    outFile.println(person.getSpouse().getName());
-                } else {
-                    outFile.println();
-                }
+        List<String> conflicts = mergePlan.getConflicts();
 
-                if(person.getDad() != null) {
-                    outFile.println(person.getDad().getName());
-                } else {
-                    outFile.println();
-                }
+        if(!conflicts.isEmpty()) {
+            message.append("\n\n").append(conflicts.size()).append(" differences were kept as they are here:");
 
-                if(person.getMom() != null) {
-                    outFile.println(person.getMom().getName());
-                } else {
-                    outFile.println();
-                }
+            // A long report is cut, the dialog can't show it all
+            for(int i = 0; i < conflicts.size() && i < MAX_REPORTED_CONFLICTS; i++) {
+                message.append("\n").append(conflicts.get(i));
+            }
 
-                outFile.println(person.getNotes().replace('\n', '|'));
+            if(conflicts.size() > MAX_REPORTED_CONFLICTS) {
+                message.append("\n...");
             }
+        }
 
-            outFile.close();
+        new AlertDialog.Builder(this)
+        .setTitle("Merge Successful")
+        .setMessage(message)
+        .setPositiveButton("OK", null)
+        .show();
+    }
 
-            Toast.makeText(this, "Names exported to your external storage.", Toast.LENGTH_SHORT).show();
-        } catch(Exception e) {
-            Log.e("menuExportNamesTapped()", e.getMessage());
-            Toast.makeText(this, "Oh snap! Developer error.", Toast.LENGTH_SHORT).show();
-        }
+    /**
+     * Show a dialog with the percentage done of a long task, cancelling the dialog runs the given
+     * cancel
+     */
+    private ProgressDialog showProgressDialog(String title, String message, final Runnable cancel) {
+        ProgressDialog progressDialog = new ProgressDialog(this);
+        progressDialog.setTitle(title);
+        progressDialog.setMessage(message);
+        progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        progressDialog.setMax(100);
+        progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, "Cancel", new DialogInterface.OnClickListener() {
+            // Stop the task
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                cancel.run();
+            }
+        });
+        progressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            // Stop the task
+            @Override
+            public void onCancel(DialogInterface dialog) {
+                cancel.run();
+            }
+        });
+        progressDialog.show();
+
+        return progressDialog;
     }
 
     /**
-     * Load all names and relationships from file
+     * Load all names and relationships from file in the format chosen
      */
     private void menuImportNamesTapped() {
+        final String[] fileNames = { TextExportCodec.FILE_NAME, GedcomExportCodec.FILE_NAME };
+
+        new AlertDialog.Builder(this)
+        .setTitle("Import Names")
+        .setItems(new String[] { "Text", "GEDCOM" }, new DialogInterface.OnClickListener() {
+            // Import from the file of the format chosen
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                confirmImport(fileNames[which], which == 0 ? new NamesImporter() : new GedcomImporter());
+            }
+        }).show();
+    }
+
+    /**
+     * Ask whether the file is merged into the names or replaces them
+     */
+    private void confirmImport(final String fileName, final GenealogyImporter importer) {
         new AlertDialog.Builder(this)
         .setTitle("Confirmation")
-        .setMessage("Warning all names will be deleted and replaced. Do you wish to continue?")
-        .setPositiveButton("Yes", new DialogInterface.OnClickListener() {
+        .setMessage("Merge adds the people, relatives and notes of the file that are missing here. Replace deletes all names and replaces them. Do you wish to continue?")
+        .setPositiveButton("Merge", new DialogInterface.OnClickListener() {
+            // Handle the merging
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                startImport(fileName, importer, true);
+            }
+        }).setNeutralButton("Replace", new DialogInterface.OnClickListener() {
             // Handle the clearing and importing
             @Override
             public void onClick(DialogInterface dialog, int which) {
-                // Stop if there are no SD card
-                if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
-                    Toast.makeText(MainActivity.this, "There are no external storage where to import data.", Toast.LENGTH_SHORT).show();
-                    return;
-                }
+                startImport(fileName, importer, false);
+            }
+        }).setNegativeButton("Cancel", null).show();
+    }
 
-                // Find the file, make sure it exists
-                File file = new File(Application.DIRECTORY, "Exported Names.txt");
+    /**
+     * Read the file in the background, then merge it or replace the names with it
+     */
+    private void startImport(String fileName, GenealogyImporter importer, boolean merge) {
+        // Stop if there are no SD card
+        if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+            Toast.makeText(this, "There are no external storage where to import data.", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-                if (!file.exists()) {
-                    Toast.makeText(MainActivity.this, "Failed to find 'Exported Names.txt'.", Toast.LENGTH_SHORT).show();
-                    return;
-                }
+        // Find the file, make sure it exists
+        File file = new File(Application.DIRECTORY, fileName);
 
-                try {
-                    genealogy = new Genealogy();
+        if (!file.exists()) {
+            Toast.makeText(this, "Failed to find '" + fileName + "'.", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-                    Scanner inFile = new Scanner(file);
+        new ImportTask(importer, merge).execute(file);
+    }
 
-                    // Load the names first, until a blank line is detected
-                    while(inFile.hasNextLine()) {
-                        String name = inFile.nextLine();
+    /**
+     * Reads the import file in the background while showing how far it got, the import can be
+     * cancelled from the dialog. A merge is also planned in the background, only making the
+     * changes is left for the UI thread
+     */
+    private class ImportTask extends AsyncTask<File, Integer, Genealogy> {
+        private GenealogyImporter importer;
+        private boolean merge;
+        private MergePlan mergePlan;
+        private ProgressDialog progressDialog;
+        private Exception error;
+
+        /**
+         * Create a task reading with the importer, and merging what was read if asked
+         */
+        public ImportTask(GenealogyImporter importer, boolean merge) {
+            this.importer = importer;
+            this.merge = merge;
+        }
 
-                        if(name.isEmpty()) {
-                            break;
-                        }
+        /**
+         * Show the progress dialog
+         */
+        @Override
+        protected void onPreExecute() {
+            progressDialog = showProgressDialog("Import Names", "Importing names...", new Runnable() {
+                // Stop reading, the current names are kept
+                @Override
+                public void run() {
+                    importer.cancel();
+                }
+            });
+        }
 
-                        genealogy.addPerson(name);
+        /**
+         * Read the file into a new genealogy, null if cancelled or failed
+         */
+        @Override
+        protected Genealogy doInBackground(File... files) {
+            try {
+                Genealogy imported = importer.read(files[0], new ProgressListener() {
+                    // Show the percentage read
+                    @Override
+                    public void onProgress(long done, long total) {
+                        publishProgress(total == 0 ? 100 : (int)(done * 100 / total));
                     }
+                });
 
-                    // Next load the relationships until to the end of file
-                    while(inFile.hasNextLine()) {
-                        String name = inFile.nextLine();
-                        Person person = genealogy.getPerson(name);
-                        person.setSpouse(genealogy.getPerson(inFile.nextLine()));
-                        person.setDad(genealogy.getPerson(inFile.nextLine()));
-                        person.setMom(genealogy.getPerson(inFile.nextLine()));
-                        person.setNotes(inFile.nextLine().replace('|', '\n'));
-                    }
+                if(merge && imported != null) {
+                    mergePlan = genealogy.planMerge(imported);
+                }
 
-                    inFile.close();
+                return imported;
+            } catch(Exception e) {
+                error = e;
+                return null;
+            }
+        }
 
-                    // Clear the old data
-                    arrayAdapterNames.clear();
+        /**
+         * Show how far the import got
+         */
+        @Override
+        protected void onProgressUpdate(Integer... progress) {
+            progressDialog.setProgress(progress[0]);
+        }
 
-                    // Update output
-                    for(String name : genealogy.getNames()) {
-                        arrayAdapterNames.add(name);
-                    }
+        /**
+         * Merge the imported genealogy into the shared one or replace it, and show the names
+         */
+        @Override
+        protected void onPostExecute(Genealogy imported) {
+            progressDialog.dismiss();
+
+            if(error != null) {
+                Log.e("ImportTask", error.getMessage());
+                Toast.makeText(MainActivity.this, "Oh snap! Developer error.", Toast.LENGTH_SHORT).show();
+                return;
+            }
 
-                    Toast.makeText(MainActivity.this, "Import successful.", Toast.LENGTH_SHORT).show();
+            if(imported == null) {
+                Toast.makeText(MainActivity.this, "Import cancelled.", Toast.LENGTH_SHORT).show();
+                return;
+            }
 
-                    // Update new data
-                    saveData();
-                } catch (Exception e) {
-                    Log.e("menuExportNamesTapped()", e.getMessage());
-                    Toast.makeText(MainActivity.this, "Oh snap! Developer error.", Toast.LENGTH_SHORT).show();
-                }
+            if(merge) {
+                // Only the changes are made and saved, and they can be undone
+                genealogy.merge(mergePlan);
+                saveData();
+                showNames();
+                showMergeReport(mergePlan);
+                return;
             }
-        }).setNegativeButton("No", null).show();
+
+            // Update new data, the imported data replaces the shared one
+            genealogy = imported;
+            session.replace(genealogy);
+
+            showNames();
+
+            Toast.makeText(MainActivity.this, "Import successful.", Toast.LENGTH_SHORT).show();
+        }
     }
 
     /**
@@ -430,7 +671,6 @@ public class MainActivity extends ActionBarActivity {
      */
     private void menuQuestionAndAnswerTapped() {
         Intent intent = new Intent(this, QuestionAnswerActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.QUESTION_AND_ANSWER_ACTIVITY_REQUEST_CODE);
     }
 
@@ -449,10 +689,6 @@ public class MainActivity extends ActionBarActivity {
             case Application.UPDATE_NAME_ACTIVITY_REQUEST_CODE:
                 processUpdateActivityResult(resultCode, intent);
                 break;
-
-            case Application.QUESTION_AND_ANSWER_ACTIVITY_REQUEST_CODE:
-                processQuestionAndAnswerActivityResult(resultCode, intent);
-                break;
         }
     }
 
@@ -464,11 +700,8 @@ public class MainActivity extends ActionBarActivity {
             return;
         }
 
-        genealogy = (Genealogy)intent.getExtras().getSerializable("genealogy");
         String personName = intent.getExtras().getString("name");
         arrayAdapterNames.add(personName);
-
-        saveData();
     }
 
     /**
@@ -479,8 +712,6 @@ public class MainActivity extends ActionBarActivity {
             return;
         }
 
-        genealogy = (Genealogy)intent.getExtras().getSerializable("genealogy");
-
         String personName = intent.getExtras().getString("name");
         int listViewIndex = intent.getExtras().getInt("list view index");
 
@@ -489,19 +720,5 @@ public class MainActivity extends ActionBarActivity {
         ListView listViewNames = (ListView)findViewById(R.id.listViewNames);
         TextView textView = (TextView) listViewNames.getChildAt(listViewIndex - listViewNames.getFirstVisiblePosition());
         textView.setText(personName);
-
-        saveData();
-    }
-
-    /**
-     * Handle the update return call back after question and answer
-     */
-    private void processQuestionAndAnswerActivityResult(int resultCode, Intent intent) {
-        if(resultCode != RESULT_OK) {
-            return;
-        }
-
-        genealogy = (Genealogy)intent.getExtras().getSerializable("genealogy");
-        saveData();
     }
 }
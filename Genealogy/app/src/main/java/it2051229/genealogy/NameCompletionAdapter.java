@@ -0,0 +1,64 @@
+package it2051229.genealogy;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it2051229.genealogy.entities.Genealogy;
+
+/**
+ * Suggests names of people already in the record while a name is being typed
+ */
+public class NameCompletionAdapter extends ArrayAdapter<String> {
+    private static final int MAX_COMPLETIONS = 10;
+
+    private Genealogy genealogy;
+    private Filter filter;
+
+    /**
+     * Initialize the adapter to complete names of the given genealogy
+     */
+    public NameCompletionAdapter(Context context, Genealogy genealogy) {
+        super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<String>());
+        this.genealogy = genealogy;
+
+        filter = new Filter() {
+            // Complete on the filtering thread, the genealogy can be read from any thread
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                String text = constraint == null ? "" : constraint.toString();
+                List<String> names = NameCompletionAdapter.this.genealogy.getCompletions(text, MAX_COMPLETIONS);
+
+                FilterResults results = new FilterResults();
+                results.values = names;
+                results.count = names.size();
+
+                return results;
+            }
+
+            // Show the completions
+            @Override
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                setNotifyOnChange(false);
+                clear();
+
+                for(String name : (List<String>)results.values) {
+                    add(name);
+                }
+
+                notifyDataSetChanged();
+            }
+        };
+    }
+
+    /**
+     * Use the genealogy's completions instead of filtering the list
+     */
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+}
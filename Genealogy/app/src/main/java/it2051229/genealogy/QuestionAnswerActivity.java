@@ -17,6 +17,7 @@ import java.util.Random;
 
 import it2051229.genealogy.entities.Application;
 import it2051229.genealogy.entities.Genealogy;
+import it2051229.genealogy.entities.GenealogySession;
 import it2051229.genealogy.entities.Person;
 
 
@@ -36,8 +37,7 @@ public class QuestionAnswerActivity extends ActionBarActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_question_answer);
 
-        Bundle extras = getIntent().getExtras();
-        genealogy = (Genealogy)extras.getSerializable("genealogy");
+        genealogy = GenealogySession.get(this).getGenealogy();
 
         ArrayList<String> names = genealogy.getNamesHavingPartialConnections();
 
@@ -88,6 +88,15 @@ public class QuestionAnswerActivity extends ActionBarActivity {
         showNextQuestion();
     }
 
+    /**
+     * Make sure the answers are on the disk before the app can be stopped
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        GenealogySession.get(this).flush();
+    }
+
     /**
      * Delete the categories that are empty
      */
@@ -121,7 +130,12 @@ public class QuestionAnswerActivity extends ActionBarActivity {
         // Randomly choose a question to show
         selectedCategory = categories[random.nextInt(categories.length)];
         person = genealogy.getPerson(unconnectedNames.get(selectedCategory).remove(0));
-        ((TextView)findViewById(R.id.textViewQuestion)).setText(person.getName() + "'s " + selectedCategory + "?");
+
+        // Tell how cut off the person is, so lone people can be linked up first
+        int familySize = genealogy.getFamilySize(person.getName());
+        String family = familySize <= 1 ? "Not linked to anyone yet" : "In a family of " + familySize + " people";
+
+        ((TextView)findViewById(R.id.textViewQuestion)).setText(person.getName() + "'s " + selectedCategory + "?\n(" + family + ")");
 
         clearEmptyCategories();
     }
@@ -131,7 +145,6 @@ public class QuestionAnswerActivity extends ActionBarActivity {
      */
     public void buttonSearchNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE);
     }
 
@@ -218,6 +231,12 @@ public class QuestionAnswerActivity extends ActionBarActivity {
             return;
         }
 
+        // A parent can't also be a descendant
+        if(!selectedCategory.equalsIgnoreCase("spouse") && genealogy.isAncestor(person.getName(), name)) {
+            Toast.makeText(this, "A person can't be their own ancestor.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         // Validation complete, update the person's properties
         Person personToRelate = genealogy.getPerson(name);
 
@@ -229,9 +248,7 @@ public class QuestionAnswerActivity extends ActionBarActivity {
             person.setMom(personToRelate);
         }
 
-        Intent intent = getIntent();
-        intent.putExtra("genealogy", genealogy);
-        setResult(RESULT_OK, intent);
+        GenealogySession.get(this).changed();
 
         Toast.makeText(this, "Answer saved.", Toast.LENGTH_SHORT).show();
         ((EditText) findViewById(R.id.editTextName)).setText("");
@@ -11,24 +11,28 @@ import android.widget.Toast;
 
 import it2051229.genealogy.entities.Application;
 import it2051229.genealogy.entities.Genealogy;
+import it2051229.genealogy.entities.GenealogySession;
 import it2051229.genealogy.entities.Graph;
+import it2051229.genealogy.entities.Kinship;
+import it2051229.genealogy.entities.KinshipIndex;
 
 
 public class RelateNamesActivity extends ActionBarActivity {
     private Genealogy genealogy;
     private Graph graph;
+    private KinshipIndex kinshipIndex;
 
     /**
-     * Build a graph so we can use it to find paths
+     * Build a graph so we can use it to find paths, and an index to name the relationships
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_relate_names);
 
-        Bundle extras = getIntent().getExtras();
-        genealogy = (Genealogy)extras.getSerializable("genealogy");
+        genealogy = GenealogySession.get(this).getGenealogy();
         graph = genealogy.buildGraph();
+        kinshipIndex = genealogy.buildKinshipIndex();
     }
 
     /**
@@ -36,7 +40,6 @@ public class RelateNamesActivity extends ActionBarActivity {
      */
     public void buttonSearchSourceNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE + 1);
     }
 
@@ -45,7 +48,6 @@ public class RelateNamesActivity extends ActionBarActivity {
      */
     public void buttonSearchDestinationNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE + 2);
     }
 
@@ -117,8 +119,24 @@ public class RelateNamesActivity extends ActionBarActivity {
             Toast.makeText(this, "Self relationship is not possible.", Toast.LENGTH_SHORT).show();
         }
 
-        // Alright, if both person exists, then find the relationship in the graph
-        String relationshipPath = graph.getShortestPath(sourceName, destinationName);
-        ((EditText) findViewById(R.id.editTextRelationshipPath)).setText(relationshipPath);
+        // Alright, if both person exists, then name the relationship and find the path in the graph
+        StringBuilder result = new StringBuilder();
+        Kinship kinship = kinshipIndex.getKinship(sourceName, destinationName);
+
+        if(kinship != null && !kinship.isRelated()) {
+            result.append(destinationName).append(" and ").append(sourceName).append(" are not related by blood\n\n");
+        } else if(kinship != null) {
+            result.append(destinationName).append(" is ").append(sourceName).append("'s ").append(kinship.getName().toLowerCase()).append("\n");
+            result.append("Common ancestors: ");
+
+            for(int i = 0; i < kinship.getCommonAncestors().size(); i++) {
+                result.append(i == 0 ? "" : ", ").append(kinship.getCommonAncestors().get(i));
+            }
+
+            result.append("\n\n");
+        }
+
+        result.append(graph.getShortestPath(sourceName, destinationName));
+        ((EditText) findViewById(R.id.editTextRelationshipPath)).setText(result.toString());
     }
 }
@@ -15,6 +15,7 @@ import android.widget.TextView;
 import java.util.ArrayList;
 
 import it2051229.genealogy.entities.Genealogy;
+import it2051229.genealogy.entities.GenealogySession;
 
 
 public class SearchNameActivity extends ActionBarActivity {
@@ -33,7 +34,7 @@ public class SearchNameActivity extends ActionBarActivity {
         setContentView(R.layout.activity_search_name);
 
         // Initialize the list view where to display the added names
-        genealogy = (Genealogy)getIntent().getSerializableExtra("genealogy");
+        genealogy = GenealogySession.get(this).getGenealogy();
         arrayListNames = genealogy.getNames();
         arrayAdapterNames = new ArrayAdapter<String>(this, android.R.layout.simple_list_item_1, arrayListNames);
 
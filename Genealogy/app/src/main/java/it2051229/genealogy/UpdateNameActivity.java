@@ -4,6 +4,7 @@ import android.content.Intent;
 import android.support.v7.app.ActionBarActivity;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.AutoCompleteTextView;
 import android.widget.EditText;
 import android.widget.Toast;
 
@@ -12,6 +13,7 @@ import java.util.ArrayList;
 
 import it2051229.genealogy.entities.Application;
 import it2051229.genealogy.entities.Genealogy;
+import it2051229.genealogy.entities.GenealogySession;
 import it2051229.genealogy.entities.Person;
 
 public class UpdateNameActivity extends ActionBarActivity {
@@ -30,7 +32,7 @@ public class UpdateNameActivity extends ActionBarActivity {
 
         String name = extras.getString("name");
 
-        genealogy = (Genealogy)extras.getSerializable("genealogy");
+        genealogy = GenealogySession.get(this).getGenealogy();
         person = genealogy.getPerson(name);
 
         ((EditText)findViewById(R.id.editTextName)).setText(name);
@@ -48,6 +50,11 @@ public class UpdateNameActivity extends ActionBarActivity {
         }
 
         ((EditText) findViewById(R.id.editTextNotes)).setText(person.getNotes());
+
+        // Suggest the names already in the record while typing a relative's name
+        for(int id : new int[] { R.id.editTextSpouseName, R.id.editTextDadName, R.id.editTextMomName }) {
+            ((AutoCompleteTextView)findViewById(id)).setAdapter(new NameCompletionAdapter(this, genealogy));
+        }
     }
 
     /**
@@ -118,6 +125,12 @@ public class UpdateNameActivity extends ActionBarActivity {
             return;
         }
 
+        // A parent can't also be a descendant
+        if(genealogy.isAncestor(person.getName(), dadName) || genealogy.isAncestor(person.getName(), momName)) {
+            Toast.makeText(this, "A person can't be their own ancestor.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         // Validation complete, update the person's properties and photo if it exists
         new File(Application.DIRECTORY, person.getName() + ".jpg").renameTo(new File(Application.DIRECTORY, name + ".jpg"));
 
@@ -146,10 +159,11 @@ public class UpdateNameActivity extends ActionBarActivity {
             person.setMom(null);
         }
 
+        GenealogySession.get(this).changed();
+
         // Signal the main activity to update the person
         Intent intent = getIntent();
         intent.putExtra("name", name);
-        intent.putExtra("genealogy", genealogy);
         setResult(RESULT_OK, intent);
         finish();
     }
@@ -159,7 +173,6 @@ public class UpdateNameActivity extends ActionBarActivity {
      */
     public void buttonSearchDadNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE + 1);
     }
 
@@ -168,7 +181,6 @@ public class UpdateNameActivity extends ActionBarActivity {
      */
     public void buttonSearchMomNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE + 2);
     }
 
@@ -177,7 +189,6 @@ public class UpdateNameActivity extends ActionBarActivity {
      */
     public void buttonSearchSpouseNameTapped(View view) {
         Intent intent = new Intent(this, SearchNameActivity.class);
-        intent.putExtra("genealogy", genealogy);
         startActivityForResult(intent, Application.SEARCH_NAME_ACTIVITY_REQUEST_CODE + 3);
     }
 
@@ -0,0 +1,133 @@
+package it2051229.genealogy.entities;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The ancestors of a person numbered the Ahnentafel way: the person is 1, and the dad and mom of
+ * number n are 2n and 2n + 1. The lines are in the order of the numbers, one generation after the
+ * other, and missing parents leave gaps in the numbers. An ancestor found again through another
+ * line, as happens when cousins marry, refers to the number it was first given and its ancestors
+ * aren't written again, so the chart grows with the number of different ancestors and not by
+ * doubling with every generation. Someone who would be their own ancestor is caught the same way.
+ */
+public class AncestorChart extends Chart {
+    /**
+     * Most generations a chart can have, the numbers of the last one must fit in a long
+     */
+    public static final int MAX_GENERATIONS = 62;
+
+    private PersonStore store;
+    private int root;
+    private int generations;
+
+    // The people still to write and their numbers, in the order of the numbers
+    private int[] ids = new int[16];
+    private long[] numbers = new long[16];
+    private int head;
+    private int tail;
+
+    // The number every person written was given first
+    private HashMap<Integer, Long> firstNumbers = new HashMap<>();
+
+    /**
+     * Create the chart of the root's ancestors over the number of generations, the root's own
+     * generation included
+     */
+    AncestorChart(Genealogy genealogy, PersonStore store, int root, int generations) {
+        super(genealogy);
+        this.store = store;
+        this.root = root;
+        this.generations = Math.min(generations, MAX_GENERATIONS);
+
+        restart();
+    }
+
+    /**
+     * Go back to the first line
+     */
+    @Override
+    public void restart() {
+        head = 0;
+        tail = 0;
+        firstNumbers.clear();
+        enqueue(root, 1);
+    }
+
+    /**
+     * Check if there are lines left
+     */
+    @Override
+    public boolean hasNext() {
+        return head < tail;
+    }
+
+    /**
+     * Get the generation of an Ahnentafel number, 1 for the root
+     */
+    public static int generationOf(long number) {
+        return 64 - Long.numberOfLeadingZeros(number);
+    }
+
+    /**
+     * Append the line of the next ancestor, whose parents come after everyone numbered before them
+     * unless the ancestor was already written
+     */
+    @Override
+    String writeLine(Appendable out) throws IOException {
+        int id = ids[head];
+        long number = numbers[head];
+        head++;
+
+        // Someone removed since the chart was started is skipped
+        if(!store.exists(id)) {
+            return null;
+        }
+
+        String name = store.getName(id);
+        out.append(Long.toString(number)).append(". ").append(name);
+
+        Long firstNumber = firstNumbers.get(id);
+
+        if(firstNumber != null) {
+            out.append(", see ").append(Long.toString(firstNumber));
+            return name;
+        }
+
+        firstNumbers.put(id, number);
+
+        if(generationOf(number) < generations) {
+            enqueue(store.getDad(id), number * 2);
+            enqueue(store.getMom(id), number * 2 + 1);
+        }
+
+        return name;
+    }
+
+    /**
+     * Add a parent to the people to write, nothing for no one
+     */
+    private void enqueue(int id, long number) {
+        if(id == PersonStore.NONE) {
+            return;
+        }
+
+        if(tail == ids.length) {
+            // Reuse the room of the people written before growing
+            if(head > ids.length / 2) {
+                System.arraycopy(ids, head, ids, 0, tail - head);
+                System.arraycopy(numbers, head, numbers, 0, tail - head);
+                tail -= head;
+                head = 0;
+            } else {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+                numbers = Arrays.copyOf(numbers, numbers.length * 2);
+            }
+        }
+
+        ids[tail] = id;
+        numbers[tail] = number;
+        tail++;
+    }
+}
@@ -0,0 +1,331 @@
+package it2051229.genealogy.entities;
+
+import java.util.Arrays;
+
+/**
+ * Answers whether someone is an ancestor of someone else without going through the whole family.
+ * Every person is given a range of numbers holding the ranges of all of their children, from walks
+ * going down the family in a few different orders. Someone whose range doesn't hold a person's
+ * range in every walk can't be their ancestor, which settles most questions right away. The rest
+ * are searched down from the ancestor, leaving out the children whose ranges don't hold the person.
+ * A new link only widens the ranges of the parent and their ancestors that don't hold the child yet,
+ * and a removed link leaves the ranges wider than they need to be, so the ranges always stay right.
+ * A link that would widen a great many ancestors, as happens while linking a large family, makes
+ * the walks be done again before the next question instead.
+ */
+class AncestryIndex {
+    // Number of walks, each one rules out people the others let through
+    private static final int WALKS = 2;
+
+    // Most people a new link widens before the walks are left to be done again
+    private static final int MAX_WIDENED = 256;
+
+    private PersonStore store;
+    private ChildrenIndex childrenIndex;
+
+    // The range of every person in every walk, the ranges of walk w are at id * WALKS + w
+    private int[] lows;
+    private int[] highs;
+
+    // Numbers given to people added after the walks, above all the others
+    private int nextNumber;
+
+    // Set when the ranges no longer hold everyone and the walks must be done again
+    private boolean stale;
+
+    // A person is seen by the search going on if their stamp equals the stamp of the search
+    private int stamp;
+    private int[] stamps;
+    private IntList searchStack = new IntList();
+
+    // The people whose ranges are being widened
+    private IntList widenStack = new IntList();
+
+    /**
+     * Create an index of everyone in the store
+     */
+    public AncestryIndex(PersonStore store, ChildrenIndex childrenIndex) {
+        this.store = store;
+        this.childrenIndex = childrenIndex;
+
+        int size = Math.max(16, store.size());
+        lows = new int[size * WALKS];
+        highs = new int[size * WALKS];
+        stamps = new int[size];
+
+        relabel();
+    }
+
+    /**
+     * Do the walks over everyone in the store
+     */
+    private void relabel() {
+        ensureCapacity(store.size());
+
+        for(int walk = 0; walk < WALKS; walk++) {
+            label(walk);
+        }
+
+        nextNumber = store.size();
+        stale = false;
+
+        // A loop of ancestors leaves some ranges short of the people met again, widen them as far
+        // as it takes
+        for(int id = 0; id < store.size(); id++) {
+            if(store.exists(id)) {
+                widenAncestors(id, store.getDad(id), Integer.MAX_VALUE);
+                widenAncestors(id, store.getMom(id), Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Number everyone in the order a walk down the family finishes with them, the range of a person
+     * goes from the lowest number under them to their own. The second walk takes the people and
+     * their children the other way round
+     */
+    private void label(int walk) {
+        int size = store.size();
+        boolean reversed = walk % 2 == 1;
+        boolean[] visited = new boolean[size];
+        int number = 0;
+
+        // The walk keeps the people it is in and how many of their children it went through
+        int[] path = new int[size];
+        int[] childrenDone = new int[size];
+
+        // Start from the people without parents, then from anyone a loop of ancestors kept out
+        for(int pass = 0; pass < 2; pass++) {
+            for(int i = 0; i < size; i++) {
+                int root = reversed ? size - 1 - i : i;
+
+                if(!store.exists(root) || visited[root] || (pass == 0 && hasParents(root))) {
+                    continue;
+                }
+
+                number = walkFrom(root, walk, reversed, visited, path, childrenDone, number);
+            }
+        }
+    }
+
+    /**
+     * Number the people under a root who aren't numbered yet, get the next number to give
+     */
+    private int walkFrom(int root, int walk, boolean reversed, boolean[] visited, int[] path, int[] childrenDone, int number) {
+        int depth = 0;
+        path[0] = root;
+        childrenDone[0] = 0;
+        visited[root] = true;
+        lows[root * WALKS + walk] = Integer.MAX_VALUE;
+
+        while(depth >= 0) {
+            int person = path[depth];
+            IntList children = childrenIndex.getChildrenOf(person);
+
+            if(childrenDone[depth] < children.size()) {
+                int next = childrenDone[depth]++;
+                int child = children.get(reversed ? children.size() - 1 - next : next);
+
+                if(!visited[child]) {
+                    visited[child] = true;
+                    lows[child * WALKS + walk] = Integer.MAX_VALUE;
+                    depth++;
+                    path[depth] = child;
+                    childrenDone[depth] = 0;
+                } else {
+                    lows[person * WALKS + walk] = Math.min(lows[person * WALKS + walk], lows[child * WALKS + walk]);
+                }
+
+                continue;
+            }
+
+            // Done with the children, the person takes the next number
+            highs[person * WALKS + walk] = number;
+            lows[person * WALKS + walk] = Math.min(lows[person * WALKS + walk], number);
+            number++;
+            depth--;
+
+            if(depth >= 0) {
+                int parent = path[depth];
+                lows[parent * WALKS + walk] = Math.min(lows[parent * WALKS + walk], lows[person * WALKS + walk]);
+            }
+        }
+
+        return number;
+    }
+
+    /**
+     * Check if a person has a dad or a mom
+     */
+    private boolean hasParents(int id) {
+        return store.getDad(id) != PersonStore.NONE || store.getMom(id) != PersonStore.NONE;
+    }
+
+    /**
+     * Start tracking a new person, they have no children yet
+     */
+    public void add(int id) {
+        ensureCapacity(id + 1);
+
+        for(int walk = 0; walk < WALKS; walk++) {
+            lows[id * WALKS + walk] = nextNumber;
+            highs[id * WALKS + walk] = nextNumber;
+        }
+
+        nextNumber++;
+    }
+
+    /**
+     * Widen the ranges of the new parent and of their ancestors until they hold the child
+     */
+    public void parentChanged(int child, int newParent) {
+        if(!stale && !widenAncestors(child, newParent, MAX_WIDENED)) {
+            stale = true;
+        }
+    }
+
+    /**
+     * Widen the ranges of a parent and of their ancestors until they hold the child, false if more
+     * than the most people allowed needed it
+     */
+    private boolean widenAncestors(int child, int parent, int maxWidened) {
+        if(parent == PersonStore.NONE) {
+            return true;
+        }
+
+        int widened = 0;
+        widenStack.clear();
+        widenStack.add(parent);
+
+        while(widenStack.size() > 0) {
+            int person = widenStack.removeLast();
+
+            if(!widen(person, child)) {
+                continue;
+            }
+
+            if(++widened > maxWidened) {
+                return false;
+            }
+
+            // The parents of someone widened may not hold them anymore
+            if(store.getDad(person) != PersonStore.NONE) {
+                widenStack.add(store.getDad(person));
+            }
+
+            if(store.getMom(person) != PersonStore.NONE) {
+                widenStack.add(store.getMom(person));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Widen the ranges of a person to hold the ranges of a descendant, false if they already did
+     */
+    private boolean widen(int person, int descendant) {
+        boolean widened = false;
+
+        for(int walk = 0; walk < WALKS; walk++) {
+            int i = person * WALKS + walk;
+            int j = descendant * WALKS + walk;
+
+            if(lows[j] < lows[i]) {
+                lows[i] = lows[j];
+                widened = true;
+            }
+
+            if(highs[j] > highs[i]) {
+                highs[i] = highs[j];
+                widened = true;
+            }
+        }
+
+        return widened;
+    }
+
+    /**
+     * Check if the ranges of a person hold the ranges of someone else in every walk
+     */
+    private boolean holds(int person, int other) {
+        for(int walk = 0; walk < WALKS; walk++) {
+            int i = person * WALKS + walk;
+            int j = other * WALKS + walk;
+
+            if(lows[j] < lows[i] || highs[j] > highs[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Check if someone is an ancestor of a person, no one is their own ancestor unless the family
+     * loops. Searches share the buffers, so only one thread searches at a time
+     */
+    public synchronized boolean isAncestor(int ancestor, int person) {
+        if(ancestor == PersonStore.NONE || person == PersonStore.NONE) {
+            return false;
+        }
+
+        if(stale) {
+            relabel();
+        }
+
+        if(!holds(ancestor, person)) {
+            return false;
+        }
+
+        nextStamp();
+        searchStack.clear();
+        searchStack.add(ancestor);
+
+        // Go down from the ancestor only through the children that may be above the person
+        while(searchStack.size() > 0) {
+            int current = searchStack.removeLast();
+
+            IntList children = childrenIndex.getChildrenOf(current);
+
+            for(int i = 0; i < children.size(); i++) {
+                int child = children.get(i);
+
+                if(child == person) {
+                    return true;
+                }
+
+                if(stamps[child] != stamp && holds(child, person)) {
+                    stamps[child] = stamp;
+                    searchStack.add(child);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Make room for the ids up to the given size
+     */
+    private void ensureCapacity(int size) {
+        if(size > stamps.length) {
+            int capacity = Math.max(size, stamps.length * 2);
+            lows = Arrays.copyOf(lows, capacity * WALKS);
+            highs = Arrays.copyOf(highs, capacity * WALKS);
+            stamps = Arrays.copyOf(stamps, capacity);
+        }
+    }
+
+    /**
+     * Move to a new search, the stamps are only cleared when the counter runs out
+     */
+    private void nextStamp() {
+        stamp++;
+
+        if(stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package it2051229.genealogy.entities;
+
+import java.io.Serializable;
+
+/**
+ * One change made to the genealogy. People are given by name so a change still means the same
+ * thing after the people are numbered again. The sequence tells the order of all changes ever made
+ */
+class Change implements Serializable {
+    public static final byte ADD = 1;
+    public static final byte REMOVE = 2;
+    public static final byte RENAME = 3;
+    public static final byte DAD = 4;
+    public static final byte MOM = 5;
+    public static final byte SPOUSE = 6;
+    public static final byte NOTES = 7;
+
+    private long sequence;
+    private byte type;
+    private String name;
+    private String value;
+
+    /**
+     * Create a change of the person with the name. The value is the new name, the relative's name
+     * or the notes depending on the type, and null for no relative
+     */
+    public Change(long sequence, byte type, String name, String value) {
+        this.sequence = sequence;
+        this.type = type;
+        this.name = name;
+        this.value = value;
+    }
+
+    /**
+     * Access the position of the change among all changes
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Access what kind of change it is
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * Access the name of the changed person
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Access the new value
+     */
+    public String getValue() {
+        return value;
+    }
+}
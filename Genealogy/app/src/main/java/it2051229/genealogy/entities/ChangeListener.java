@@ -0,0 +1,28 @@
+package it2051229.genealogy.entities;
+
+/**
+ * Receives a notification whenever a person's links to other people or notes change. People are
+ * given by their id in the store, and PersonStore.NONE stands for no one
+ */
+interface ChangeListener {
+
+    /**
+     * Called after the dad of a child has been replaced
+     */
+    void onDadChanged(int child, int oldDad, int newDad);
+
+    /**
+     * Called after the mom of a child has been replaced
+     */
+    void onMomChanged(int child, int oldMom, int newMom);
+
+    /**
+     * Called after the spouse of a person has been replaced
+     */
+    void onSpouseChanged(int person, int oldSpouse, int newSpouse);
+
+    /**
+     * Called after the notes of a person have been replaced
+     */
+    void onNotesChanged(int person, String oldNotes);
+}
@@ -0,0 +1,96 @@
+package it2051229.genealogy.entities;
+
+import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A chart of people written one line at a time, so only what is shown or saved is ever built. The
+ * lines can be written a page at a time to a list, or all at once to a file, and each page is
+ * written under the read lock of the genealogy.
+ */
+public abstract class Chart {
+    private Lock readLock;
+
+    /**
+     * Create a chart of people in the genealogy
+     */
+    Chart(Genealogy genealogy) {
+        readLock = genealogy.getLock().readLock();
+    }
+
+    /**
+     * Go back to the first line
+     */
+    public abstract void restart();
+
+    /**
+     * Check if there are lines left
+     */
+    public abstract boolean hasNext();
+
+    /**
+     * Append the next line without the new line and move past it, get the name of the person on
+     * the line or null if the line was skipped
+     */
+    abstract String writeLine(Appendable out) throws IOException;
+
+    /**
+     * Append the next line without the new line, and get the name of the person on it. Nothing is
+     * appended and null is returned for someone removed since the chart was started
+     */
+    public String next(Appendable out) throws IOException {
+        readLock.lock();
+
+        try {
+            return writeLine(out);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Append the next lines, each ending with a new line, and get how many were written
+     */
+    public int write(Appendable out, int maxLines) throws IOException {
+        readLock.lock();
+
+        try {
+            int lines = 0;
+
+            while(lines < maxLines && hasNext()) {
+                if(writeLine(out) != null) {
+                    out.append('\n');
+                    lines++;
+                }
+            }
+
+            return lines;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Append the next line to a builder, like next(Appendable)
+     */
+    public String next(StringBuilder out) {
+        try {
+            return next((Appendable)out);
+        } catch(IOException e) {
+            // A StringBuilder doesn't fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Append the next lines to a builder, like write(Appendable, int)
+     */
+    public int write(StringBuilder out, int maxLines) {
+        try {
+            return write((Appendable)out, maxLines);
+        } catch(IOException e) {
+            // A StringBuilder doesn't fail
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package it2051229.genealogy.entities;
+
+import java.util.Arrays;
+
+/**
+ * Reverse index from a parent to its children so children lookups doesn't need to scan everyone
+ */
+class ChildrenIndex {
+    private static final IntList NO_CHILDREN = new IntList();
+
+    private PersonStore store;
+    private IntList[] children;
+
+    /**
+     * Create an index of everyone in the store
+     */
+    public ChildrenIndex(PersonStore store) {
+        this.store = store;
+        children = new IntList[Math.max(16, store.size())];
+
+        for(int id = 0; id < store.size(); id++) {
+            if(store.exists(id)) {
+                add(id);
+            }
+        }
+    }
+
+    /**
+     * Start tracking the links of a person
+     */
+    public void add(int id) {
+        link(store.getDad(id), id);
+
+        if(store.getMom(id) != store.getDad(id)) {
+            link(store.getMom(id), id);
+        }
+    }
+
+    /**
+     * Stop tracking a person whose links are already cleared
+     */
+    public void remove(int id) {
+        if(id < children.length) {
+            children[id] = null;
+        }
+    }
+
+    /**
+     * Get the ids of the children of a parent, the list must not be changed
+     */
+    public IntList getChildrenOf(int parent) {
+        if(parent < 0 || parent >= children.length || children[parent] == null) {
+            return NO_CHILDREN;
+        }
+
+        return children[parent];
+    }
+
+    /**
+     * Move the child from the old parent to the new parent
+     */
+    public void parentChanged(int child, int oldParent, int newParent) {
+        // The old parent may still be the other parent of the child
+        if(oldParent != store.getDad(child) && oldParent != store.getMom(child)) {
+            unlink(oldParent, child);
+        }
+
+        link(newParent, child);
+    }
+
+    /**
+     * Add the child under the parent
+     */
+    private void link(int parent, int child) {
+        if(parent == PersonStore.NONE) {
+            return;
+        }
+
+        if(parent >= children.length) {
+            children = Arrays.copyOf(children, Math.max(parent + 1, children.length * 2));
+        }
+
+        if(children[parent] == null) {
+            children[parent] = new IntList();
+        }
+
+        if(children[parent].indexOf(child) < 0) {
+            children[parent].add(child);
+        }
+    }
+
+    /**
+     * Remove the child under the parent
+     */
+    private void unlink(int parent, int child) {
+        if(parent == PersonStore.NONE || parent >= children.length || children[parent] == null) {
+            return;
+        }
+
+        children[parent].remove(child);
+
+        if(children[parent].size() == 0) {
+            children[parent] = null;
+        }
+    }
+}
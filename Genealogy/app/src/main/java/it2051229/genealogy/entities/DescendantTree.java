@@ -0,0 +1,162 @@
+package it2051229.genealogy.entities;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The descendants of a person as the lines of a tree. The walk keeps the people whose children
+ * are being gone through on a path of its own instead of recursing, so deep families can't
+ * overflow the stack, and the start of the lines is one shared prefix that grows and shrinks with
+ * the path. The walk can stop at a number of generations and skip the children of collapsed
+ * people, who are marked with [+]. A person who would be their own descendant is marked as a
+ * cycle and not gone through again.
+ */
+public class DescendantTree extends Chart {
+    private static final String BRANCH = "├── ";
+    private static final String LAST_BRANCH = "└── ";
+    private static final String LINE = "│   ";
+    private static final String SPACE = "    ";
+
+    private PersonStore store;
+    private ChildrenIndex childrenIndex;
+    private int root;
+    private int maxDepth;
+    private BitSet collapsed = new BitSet();
+
+    // The people whose children are being written, from the root down, and the index of the next
+    // child of each
+    private int[] path = new int[16];
+    private int[] nextChildren = new int[16];
+    private int pathLength;
+    private BitSet onPath = new BitSet();
+
+    // What comes before the lines of the children of the last person on the path
+    private StringBuilder prefix = new StringBuilder();
+
+    // The person on the next line, NONE once everyone was written
+    private int next;
+    private boolean nextIsLast;
+
+    /**
+     * Create the tree of the root's descendants down to the number of generations below the root
+     */
+    DescendantTree(Genealogy genealogy, PersonStore store, ChildrenIndex childrenIndex, int root, int maxDepth) {
+        super(genealogy);
+        this.store = store;
+        this.childrenIndex = childrenIndex;
+        this.root = root;
+        this.maxDepth = maxDepth;
+
+        restart();
+    }
+
+    /**
+     * Go back to the first line
+     */
+    @Override
+    public void restart() {
+        pathLength = 0;
+        onPath.clear();
+        prefix.setLength(0);
+        next = root;
+        nextIsLast = true;
+    }
+
+    /**
+     * Check if there are lines left
+     */
+    @Override
+    public boolean hasNext() {
+        return next != PersonStore.NONE;
+    }
+
+    /**
+     * Collapse or expand the children of a person, seen from the next restart
+     */
+    public void setCollapsed(Person person, boolean collapsed) {
+        this.collapsed.set(person.getId(), collapsed);
+    }
+
+    /**
+     * Check if the children of a person are collapsed
+     */
+    public boolean isCollapsed(Person person) {
+        return collapsed.get(person.getId());
+    }
+
+    /**
+     * Append the line of the next person and move to the person after, the children of the person
+     * come next unless they aren't shown
+     */
+    @Override
+    String writeLine(Appendable out) throws IOException {
+        int id = next;
+
+        // Someone removed since the tree was started is skipped
+        if(!store.exists(id)) {
+            moveToNext();
+            return null;
+        }
+
+        String name = store.getName(id);
+        out.append(prefix).append(nextIsLast ? LAST_BRANCH : BRANCH).append(name);
+
+        if(store.getSpouse(id) != PersonStore.NONE) {
+            out.append(" & ").append(store.getName(store.getSpouse(id)));
+        }
+
+        boolean hasChildren = childrenIndex.getChildrenOf(id).size() > 0;
+
+        if(onPath.get(id)) {
+            out.append(" (cycle)");
+        } else if(hasChildren && (pathLength >= maxDepth || collapsed.get(id))) {
+            out.append(" [+]");
+        } else if(hasChildren) {
+            push(id);
+        }
+
+        moveToNext();
+
+        return name;
+    }
+
+    /**
+     * Start going through the children of the person
+     */
+    private void push(int id) {
+        if(pathLength == path.length) {
+            path = Arrays.copyOf(path, pathLength * 2);
+            nextChildren = Arrays.copyOf(nextChildren, pathLength * 2);
+        }
+
+        prefix.append(nextIsLast ? SPACE : LINE);
+        path[pathLength] = id;
+        nextChildren[pathLength] = 0;
+        pathLength++;
+        onPath.set(id);
+    }
+
+    /**
+     * Find the next child of the last person on the path, going back up the path when a person
+     * has no children left
+     */
+    private void moveToNext() {
+        while(pathLength > 0) {
+            int parent = path[pathLength - 1];
+            IntList children = childrenIndex.getChildrenOf(parent);
+
+            if(nextChildren[pathLength - 1] < children.size()) {
+                next = children.get(nextChildren[pathLength - 1]++);
+                nextIsLast = nextChildren[pathLength - 1] == children.size();
+                return;
+            }
+
+            onPath.clear(parent);
+            pathLength--;
+            prefix.setLength(prefix.length() - SPACE.length());
+        }
+
+        next = PersonStore.NONE;
+    }
+}
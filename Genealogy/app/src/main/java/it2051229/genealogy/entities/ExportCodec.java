@@ -0,0 +1,38 @@
+package it2051229.genealogy.entities;
+
+/**
+ * A format the names and relationships can be exported in. The exporter goes through everyone
+ * once per pass, and the codec puts the text of each person at the end of a buffer the exporter
+ * writes out in large blocks, so nothing is built for the whole genealogy at once.
+ */
+public abstract class ExportCodec {
+
+    /**
+     * Name of the file the export is written to
+     */
+    public abstract String getFileName();
+
+    /**
+     * Append what comes before everyone, and look at the people first if the codec needs to
+     */
+    void begin(PersonStore store, StringBuilder out) {
+    }
+
+    /**
+     * Number of times everyone is written, e.g. once for the names and once for the relationships
+     */
+    int getPassCount() {
+        return 1;
+    }
+
+    /**
+     * Append the text of a person for the pass
+     */
+    abstract void writePerson(PersonStore store, int id, int pass, StringBuilder out);
+
+    /**
+     * Append what comes after everyone in the pass
+     */
+    void endPass(int pass, StringBuilder out) {
+    }
+}
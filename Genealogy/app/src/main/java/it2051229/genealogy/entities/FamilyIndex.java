@@ -0,0 +1,221 @@
+package it2051229.genealogy.entities;
+
+import java.util.Arrays;
+
+/**
+ * Groups people into families, everyone reachable from someone through dads, moms and spouses is
+ * in their family. Families are joined as links are added, each one a tree whose root stands for
+ * the family, and the members of a family are kept in a ring so they can be listed without going
+ * through everyone. A dropped link may split a family, so the family is only marked and is grouped
+ * again from the links of its own members the next time it is asked about.
+ */
+class FamilyIndex {
+    private PersonStore store;
+
+    // The person above each person in the tree of their family, roots are above themselves
+    private int[] parents;
+
+    // Number of members of the family of each root
+    private int[] sizes;
+
+    // The next member in the ring of each family
+    private int[] nextMembers;
+
+    // Set on the root of a family that may have split
+    private boolean[] split;
+
+    private IntList members = new IntList();
+
+    /**
+     * Create an index of everyone in the store
+     */
+    public FamilyIndex(PersonStore store) {
+        this.store = store;
+
+        int size = Math.max(16, store.size());
+        parents = new int[size];
+        sizes = new int[size];
+        nextMembers = new int[size];
+        split = new boolean[size];
+
+        for(int id = 0; id < store.size(); id++) {
+            makeFamily(id);
+        }
+
+        for(int id = 0; id < store.size(); id++) {
+            if(store.exists(id)) {
+                joinLinks(id);
+            }
+        }
+    }
+
+    /**
+     * Start tracking a new person, they are a family of their own
+     */
+    public void add(int id) {
+        ensureCapacity(id + 1);
+        makeFamily(id);
+    }
+
+    /**
+     * Mark the family of a removed person to be grouped again, their links are already dropped
+     */
+    public void remove(int id) {
+        split[find(id)] = true;
+    }
+
+    /**
+     * Join the families of two people that were linked, and mark the family of two people whose
+     * link was dropped
+     */
+    public void linkChanged(int person, int oldRelative, int newRelative) {
+        if(oldRelative != PersonStore.NONE) {
+            split[find(person)] = true;
+        }
+
+        if(newRelative != PersonStore.NONE) {
+            join(person, newRelative);
+        }
+    }
+
+    /**
+     * Get the id of the root standing for a person's family, it stays the same until the links
+     * change
+     */
+    public synchronized int getFamily(int id) {
+        return familyOf(id);
+    }
+
+    /**
+     * Number of people in a person's family, themselves included
+     */
+    public synchronized int getFamilySize(int id) {
+        return sizes[familyOf(id)];
+    }
+
+    /**
+     * Add the ids of everyone in a person's family to the list
+     */
+    public synchronized void getFamilyMembers(int id, IntList result) {
+        int first = familyOf(id);
+        int member = first;
+
+        do {
+            result.add(member);
+            member = nextMembers[member];
+        } while(member != first);
+    }
+
+    /**
+     * Find the root of a person's family, grouping the family again first if it may have split
+     */
+    private int familyOf(int id) {
+        int root = find(id);
+
+        if(split[root]) {
+            regroup(root);
+            root = find(id);
+        }
+
+        return root;
+    }
+
+    /**
+     * Group a family that may have split again from the links of its members
+     */
+    private void regroup(int root) {
+        // Everyone the family may have split into was in its ring
+        members.clear();
+        int member = root;
+
+        do {
+            members.add(member);
+            member = nextMembers[member];
+        } while(member != root);
+
+        for(int i = 0; i < members.size(); i++) {
+            makeFamily(members.get(i));
+        }
+
+        for(int i = 0; i < members.size(); i++) {
+            if(store.exists(members.get(i))) {
+                joinLinks(members.get(i));
+            }
+        }
+    }
+
+    /**
+     * Join a person's family with the families of the people they link to
+     */
+    private void joinLinks(int id) {
+        join(id, store.getDad(id));
+        join(id, store.getMom(id));
+        join(id, store.getSpouse(id));
+    }
+
+    /**
+     * Make a person a family of their own
+     */
+    private void makeFamily(int id) {
+        parents[id] = id;
+        sizes[id] = 1;
+        nextMembers[id] = id;
+        split[id] = false;
+    }
+
+    /**
+     * Find the root of a person's family, making the people passed point further up
+     */
+    private int find(int id) {
+        while(parents[id] != id) {
+            parents[id] = parents[parents[id]];
+            id = parents[id];
+        }
+
+        return id;
+    }
+
+    /**
+     * Join the families of two people, the larger family takes in the smaller one
+     */
+    private void join(int first, int second) {
+        if(second == PersonStore.NONE) {
+            return;
+        }
+
+        int firstRoot = find(first);
+        int secondRoot = find(second);
+
+        if(firstRoot == secondRoot) {
+            return;
+        }
+
+        if(sizes[firstRoot] < sizes[secondRoot]) {
+            int root = firstRoot;
+            firstRoot = secondRoot;
+            secondRoot = root;
+        }
+
+        parents[secondRoot] = firstRoot;
+        sizes[firstRoot] += sizes[secondRoot];
+        split[firstRoot] |= split[secondRoot];
+
+        // Swapping the next members joins the two rings into one
+        int next = nextMembers[firstRoot];
+        nextMembers[firstRoot] = nextMembers[secondRoot];
+        nextMembers[secondRoot] = next;
+    }
+
+    /**
+     * Make room for the ids up to the given size
+     */
+    private void ensureCapacity(int size) {
+        if(size > parents.length) {
+            int capacity = Math.max(size, parents.length * 2);
+            parents = Arrays.copyOf(parents, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            nextMembers = Arrays.copyOf(nextMembers, capacity);
+            split = Arrays.copyOf(split, capacity);
+        }
+    }
+}
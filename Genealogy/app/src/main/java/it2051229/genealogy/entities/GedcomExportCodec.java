@@ -0,0 +1,371 @@
+package it2051229.genealogy.entities;
+
+import java.util.Arrays;
+
+/**
+ * GEDCOM 5.5 in UTF-8, which other genealogy tools read. Everyone is an INDI record with the
+ * name and notes, and every couple of dad and mom, or of spouses, is a FAM record with the couple
+ * as husband and wife and their children. Someone who is a dad is the husband and someone who is a
+ * mom the wife, otherwise the order is that of the ids. Only the families of spouses have a MARR
+ * line, and when only one of the partners has the other as spouse a _SPOU line points to that
+ * partner, so reading the file back links the same spouses. The families are found before writing by
+ * sorting the couples, and are kept in arrays of ints so no object is made per person or family.
+ * The INDI records come first, then the FAM records, each written with one of its partners.
+ */
+public class GedcomExportCodec extends ExportCodec {
+    public static final String FILE_NAME = "Exported Names.ged";
+
+    // GEDCOM lines are at most 255 letters, longer text goes on in CONC lines
+    private static final int MAX_TEXT_LENGTH = 200;
+
+    // Which partners of a family have the other as spouse
+    private static final byte HUSBAND_LINKED = 1;
+    private static final byte WIFE_LINKED = 2;
+
+    // The couple of family f is (husband id + 1) << 32 | (wife id + 1), sorted
+    private long[] couples;
+    private int familyCount;
+
+    // The children of family f are children[childStarts[f]] until childStarts[f + 1]
+    private int[] childStarts;
+    private int[] children;
+
+    // Set in spouseLinks[f] when the husband or the wife of family f has the other as spouse
+    private byte[] spouseLinks;
+
+    // The families where person p is husband or wife are partnerFamilies[partnerStarts[p]] until
+    // partnerStarts[p + 1]
+    private int[] partnerStarts;
+    private int[] partnerFamilies;
+
+    private boolean[] dads;
+    private boolean[] moms;
+
+    // Reused to build names before the @ are doubled
+    private StringBuilder name = new StringBuilder();
+
+    /**
+     * Name of the file the export is written to
+     */
+    @Override
+    public String getFileName() {
+        return FILE_NAME;
+    }
+
+    /**
+     * Find the families and append the header
+     */
+    @Override
+    void begin(PersonStore store, StringBuilder out) {
+        findFamilies(store);
+
+        out.append("0 HEAD\n");
+        out.append("1 SOUR GENEALOGY\n");
+        out.append("1 SUBM @U1@\n");
+        out.append("1 GEDC\n");
+        out.append("2 VERS 5.5\n");
+        out.append("2 FORM LINEAGE-LINKED\n");
+        out.append("1 CHAR UTF-8\n");
+        out.append("0 @U1@ SUBM\n");
+        out.append("1 NAME Genealogy\n");
+    }
+
+    /**
+     * The people come first, then the families
+     */
+    @Override
+    int getPassCount() {
+        return 2;
+    }
+
+    /**
+     * Append the INDI record of a person, or the FAM records the person is written with
+     */
+    @Override
+    void writePerson(PersonStore store, int id, int pass, StringBuilder out) {
+        if(pass == 0) {
+            writeIndividual(store, id, out);
+            return;
+        }
+
+        for(int i = partnerStarts[id]; i < partnerStarts[id + 1]; i++) {
+            int family = partnerFamilies[i];
+            int husband = husbandOf(family);
+
+            // Written once, with the husband or with the wife when there is no husband
+            if(husband == id || husband == PersonStore.NONE) {
+                writeFamily(family, out);
+            }
+        }
+    }
+
+    /**
+     * The file ends after the families
+     */
+    @Override
+    void endPass(int pass, StringBuilder out) {
+        if(pass == 1) {
+            out.append("0 TRLR\n");
+        }
+    }
+
+    /**
+     * Append the INDI record of a person
+     */
+    private void writeIndividual(PersonStore store, int id, StringBuilder out) {
+        out.append("0 @I").append(id + 1).append("@ INDI\n");
+
+        name.setLength(0);
+        store.appendName(id, name);
+        appendText(1, "NAME", name, out);
+
+        if(dads[id] != moms[id]) {
+            out.append(dads[id] ? "1 SEX M\n" : "1 SEX F\n");
+        }
+
+        if(store.getDad(id) != PersonStore.NONE || store.getMom(id) != PersonStore.NONE) {
+            int family = familyOf(store.getDad(id), store.getMom(id));
+            out.append("1 FAMC @F").append(family + 1).append("@\n");
+        }
+
+        for(int i = partnerStarts[id]; i < partnerStarts[id + 1]; i++) {
+            out.append("1 FAMS @F").append(partnerFamilies[i] + 1).append("@\n");
+        }
+
+        if(!store.getNotes(id).isEmpty()) {
+            appendText(1, "NOTE", store.getNotes(id), out);
+        }
+    }
+
+    /**
+     * Append the FAM record of a family
+     */
+    private void writeFamily(int family, StringBuilder out) {
+        out.append("0 @F").append(family + 1).append("@ FAM\n");
+
+        if(husbandOf(family) != PersonStore.NONE) {
+            out.append("1 HUSB @I").append(husbandOf(family) + 1).append("@\n");
+        }
+
+        if(wifeOf(family) != PersonStore.NONE) {
+            out.append("1 WIFE @I").append(wifeOf(family) + 1).append("@\n");
+        }
+
+        for(int i = childStarts[family]; i < childStarts[family + 1]; i++) {
+            out.append("1 CHIL @I").append(children[i] + 1).append("@\n");
+        }
+
+        if(spouseLinks[family] != 0) {
+            out.append("1 MARR Y\n");
+        }
+
+        // A link going only one way names the partner it goes from
+        if(spouseLinks[family] == HUSBAND_LINKED) {
+            out.append("1 _SPOU @I").append(husbandOf(family) + 1).append("@\n");
+        } else if(spouseLinks[family] == WIFE_LINKED) {
+            out.append("1 _SPOU @I").append(wifeOf(family) + 1).append("@\n");
+        }
+    }
+
+    /**
+     * Append a line with the text, new lines in the text go on in CONT lines and long lines in
+     * CONC lines, and every @ is doubled
+     */
+    private static void appendText(int level, String tag, CharSequence text, StringBuilder out) {
+        out.append(level).append(' ').append(tag);
+
+        int lineLength = 0;
+
+        for(int i = 0; i < text.length(); i++) {
+            char letter = text.charAt(i);
+
+            if(letter == '\n') {
+                out.append('\n').append(level + 1).append(" CONT");
+                lineLength = 0;
+                continue;
+            }
+
+            // Not split next to a space, some readers drop the spaces at the end of a line
+            if(lineLength >= MAX_TEXT_LENGTH && letter != ' ' && text.charAt(i - 1) != ' ') {
+                out.append('\n').append(level + 1).append(" CONC");
+                lineLength = 0;
+            }
+
+            if(lineLength == 0) {
+                out.append(' ');
+            }
+
+            out.append(letter);
+
+            if(letter == '@') {
+                out.append('@');
+            }
+
+            lineLength++;
+        }
+
+        out.append('\n');
+    }
+
+    /**
+     * Find the couples of dads and moms and of spouses, which of them are spouses, and who the
+     * children and partners of every family are
+     */
+    private void findFamilies(PersonStore store) {
+        dads = new boolean[store.size()];
+        moms = new boolean[store.size()];
+
+        for(int id = 0; id < store.size(); id++) {
+            if(store.exists(id)) {
+                if(store.getDad(id) != PersonStore.NONE) {
+                    dads[store.getDad(id)] = true;
+                }
+
+                if(store.getMom(id) != PersonStore.NONE) {
+                    moms[store.getMom(id)] = true;
+                }
+            }
+        }
+
+        // Every couple once, sorted so a couple's family is found by binary search
+        couples = new long[store.count() * 2];
+        familyCount = 0;
+
+        for(int id = 0; id < store.size(); id++) {
+            if(!store.exists(id)) {
+                continue;
+            }
+
+            if(store.getDad(id) != PersonStore.NONE || store.getMom(id) != PersonStore.NONE) {
+                couples[familyCount++] = coupleOf(store.getDad(id), store.getMom(id));
+            }
+
+            int spouse = store.getSpouse(id);
+
+            if(spouse != PersonStore.NONE && spouse != id) {
+                couples[familyCount++] = isHusband(id, spouse) ? coupleOf(id, spouse) : coupleOf(spouse, id);
+            }
+        }
+
+        Arrays.sort(couples, 0, familyCount);
+
+        int uniqueCount = 0;
+
+        for(int i = 0; i < familyCount; i++) {
+            if(uniqueCount == 0 || couples[uniqueCount - 1] != couples[i]) {
+                couples[uniqueCount++] = couples[i];
+            }
+        }
+
+        familyCount = uniqueCount;
+
+        // Mark the families of spouses with the partners whose link goes to the other
+        spouseLinks = new byte[familyCount];
+
+        for(int id = 0; id < store.size(); id++) {
+            int spouse = store.exists(id) ? store.getSpouse(id) : PersonStore.NONE;
+
+            if(spouse != PersonStore.NONE && spouse != id) {
+                if(isHusband(id, spouse)) {
+                    spouseLinks[familyOf(id, spouse)] |= HUSBAND_LINKED;
+                } else {
+                    spouseLinks[familyOf(spouse, id)] |= WIFE_LINKED;
+                }
+            }
+        }
+
+        // Count, then place the children of every family
+        childStarts = new int[familyCount + 1];
+        int[] childFamilies = new int[store.size()];
+
+        for(int id = 0; id < store.size(); id++) {
+            childFamilies[id] = -1;
+
+            if(store.exists(id) && (store.getDad(id) != PersonStore.NONE || store.getMom(id) != PersonStore.NONE)) {
+                childFamilies[id] = familyOf(store.getDad(id), store.getMom(id));
+                childStarts[childFamilies[id] + 1]++;
+            }
+        }
+
+        for(int family = 0; family < familyCount; family++) {
+            childStarts[family + 1] += childStarts[family];
+        }
+
+        children = new int[childStarts[familyCount]];
+        int[] next = Arrays.copyOf(childStarts, familyCount);
+
+        for(int id = 0; id < store.size(); id++) {
+            if(childFamilies[id] >= 0) {
+                children[next[childFamilies[id]]++] = id;
+            }
+        }
+
+        // Count, then place the families of every partner
+        partnerStarts = new int[store.size() + 1];
+
+        for(int family = 0; family < familyCount; family++) {
+            if(husbandOf(family) != PersonStore.NONE) {
+                partnerStarts[husbandOf(family) + 1]++;
+            }
+
+            if(wifeOf(family) != PersonStore.NONE) {
+                partnerStarts[wifeOf(family) + 1]++;
+            }
+        }
+
+        for(int id = 0; id < store.size(); id++) {
+            partnerStarts[id + 1] += partnerStarts[id];
+        }
+
+        partnerFamilies = new int[partnerStarts[store.size()]];
+        next = Arrays.copyOf(partnerStarts, store.size());
+
+        for(int family = 0; family < familyCount; family++) {
+            if(husbandOf(family) != PersonStore.NONE) {
+                partnerFamilies[next[husbandOf(family)]++] = family;
+            }
+
+            if(wifeOf(family) != PersonStore.NONE) {
+                partnerFamilies[next[wifeOf(family)]++] = family;
+            }
+        }
+    }
+
+    /**
+     * Check if the first of 2 spouses is the husband, the same whichever spouse is asked first
+     */
+    private boolean isHusband(int a, int b) {
+        boolean aIsHusband = dads[a] || moms[b];
+        boolean bIsHusband = dads[b] || moms[a];
+
+        return aIsHusband == bIsHusband ? a < b : aIsHusband;
+    }
+
+    /**
+     * Make the key of a couple, NONE for a missing partner
+     */
+    private static long coupleOf(int husband, int wife) {
+        return ((long)(husband + 1) << 32) | (wife + 1);
+    }
+
+    /**
+     * Find the family of a couple
+     */
+    private int familyOf(int husband, int wife) {
+        return Arrays.binarySearch(couples, 0, familyCount, coupleOf(husband, wife));
+    }
+
+    /**
+     * Access the husband of a family, NONE if there is none
+     */
+    private int husbandOf(int family) {
+        return (int)(couples[family] >>> 32) - 1;
+    }
+
+    /**
+     * Access the wife of a family, NONE if there is none
+     */
+    private int wifeOf(int family) {
+        return (int)couples[family] - 1;
+    }
+}
@@ -0,0 +1,510 @@
+package it2051229.genealogy.entities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a GEDCOM 5.5 file into a new genealogy. The file is read line by line twice instead of
+ * being loaded as a tree. The first time every INDI record becomes a person and its cross-reference
+ * is kept in a table, the second time the FAM records link the children to the husband and wife as
+ * dad and mom, and the NOTE records are kept for the people pointing to them. Only a FAM record with
+ * a MARR line makes the husband and wife spouses, the rest are only parents. A _SPOU line, written
+ * by this app when only one partner has the other as spouse, links only the partner it points to,
+ * otherwise both partners are linked.
+ * What is held besides the people is the table of cross-references and the notes pointed to, so
+ * large files are read in a small heap. Names are kept unique as the genealogy needs, a name found
+ * again gets a number. The file is expected in UTF-8 or ASCII.
+ */
+public class GedcomImporter implements GenealogyImporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LINES_PER_PROGRESS = 4096;
+
+    // The records that are read, anything else is skipped
+    private static final int OTHER = 0;
+    private static final int INDI = 1;
+    private static final int FAM = 2;
+    private static final int NOTE = 3;
+
+    private volatile boolean cancelled;
+
+    private PersonStore store;
+    private NameIndex nameIndex;
+
+    // People by their cross-reference, and the note records pointed to by theirs
+    private XrefTable people;
+    private XrefTable noteRecords;
+    private String[] noteTexts;
+
+    // Pairs of person id and note record pointed to by the person
+    private int[] noteLinks;
+    private int noteLinkCount;
+
+    // Parts of the line read: level, cross-reference without the @, tag and value
+    private String line;
+    private int level;
+    private int xrefStart;
+    private int xrefEnd;
+    private int tagStart;
+    private int tagEnd;
+    private int valueStart;
+
+    // The record being read
+    private int record;
+    private StringBuilder xref = new StringBuilder();
+    private StringBuilder name = new StringBuilder();
+    private StringBuilder notes = new StringBuilder();
+    private int recordNoteLinks;
+    private int noteRecord;
+    private int husband;
+    private int wife;
+    private int[] children = new int[16];
+    private int childCount;
+    private boolean married;
+    private IntList linkedPartners = new IntList();
+
+    // Set while the lines continuing a note are read, they are one level below the note
+    private boolean inNote;
+    private int noteLevel;
+
+    /**
+     * Stop the import going on, read returns null
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Read the file into a new genealogy, null if the import was cancelled. The progress is in
+     * bytes of the file read over both times
+     */
+    @Override
+    public Genealogy read(File file, ProgressListener listener) throws IOException {
+        store = new PersonStore();
+        nameIndex = new NameIndex(store);
+        people = new XrefTable();
+        noteRecords = new XrefTable();
+        noteLinks = new int[16];
+        noteLinkCount = 0;
+
+        long totalBytes = file.length() * 2;
+
+        for(int pass = 0; pass < 2; pass++) {
+            if(!readPass(file, pass, listener, totalBytes)) {
+                return null;
+            }
+        }
+
+        // The note records are only known once the whole file was read
+        for(int i = 0; i < noteLinkCount; i += 2) {
+            addNotes(noteLinks[i], noteTexts[noteLinks[i + 1]]);
+        }
+
+        if(listener != null) {
+            listener.onProgress(totalBytes, totalBytes);
+        }
+
+        return new Genealogy(store);
+    }
+
+    /**
+     * Read the file once, the people the first time and their links and notes the second time.
+     * False if the import was cancelled
+     */
+    private boolean readPass(File file, int pass, ProgressListener listener, long totalBytes) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), BUFFER_SIZE);
+            int lines = 0;
+
+            if(pass == 1) {
+                noteTexts = new String[noteRecords.size()];
+            }
+
+            record = OTHER;
+
+            while((line = reader.readLine()) != null) {
+                if(!parseLine()) {
+                    continue;
+                }
+
+                if(level == 0) {
+                    endRecord();
+                    startRecord(pass);
+                } else {
+                    readRecordLine();
+                }
+
+                if(++lines % LINES_PER_PROGRESS == 0) {
+                    if(cancelled) {
+                        return false;
+                    }
+
+                    if(listener != null) {
+                        // The channel is ahead of the lines by at most the buffer
+                        listener.onProgress(pass * totalBytes / 2 + channel.position(), totalBytes);
+                    }
+                }
+            }
+
+            endRecord();
+
+            return !cancelled;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Find the parts of the line, false for a line that isn't GEDCOM
+     */
+    private boolean parseLine() {
+        int i = 0;
+
+        // Leading white space and the byte order mark are allowed
+        while(i < line.length() && (line.charAt(i) <= ' ' || line.charAt(i) == '\uFEFF')) {
+            i++;
+        }
+
+        if(i == line.length() || line.charAt(i) < '0' || line.charAt(i) > '9') {
+            return false;
+        }
+
+        level = 0;
+
+        while(i < line.length() && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+            level = level * 10 + line.charAt(i++) - '0';
+        }
+
+        i = skipSpaces(i);
+        xrefStart = xrefEnd = i;
+
+        if(i < line.length() && line.charAt(i) == '@') {
+            xrefStart = i + 1;
+            xrefEnd = line.indexOf('@', xrefStart);
+
+            if(xrefEnd < 0) {
+                return false;
+            }
+
+            i = skipSpaces(xrefEnd + 1);
+        }
+
+        tagStart = i;
+
+        while(i < line.length() && line.charAt(i) != ' ') {
+            i++;
+        }
+
+        tagEnd = i;
+
+        // The value is everything after the one space following the tag
+        valueStart = Math.min(i + 1, line.length());
+
+        return tagStart < tagEnd;
+    }
+
+    /**
+     * Index of the first letter from i that isn't a space
+     */
+    private int skipSpaces(int i) {
+        while(i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Check if the tag of the line is the given one
+     */
+    private boolean isTag(String tag) {
+        return tagEnd - tagStart == tag.length() && line.startsWith(tag, tagStart);
+    }
+
+    /**
+     * Index of the closing @ when the value of the line points to a record, like @I12@, -1 when
+     * the value is text
+     */
+    private int pointerEnd() {
+        int end = line.length();
+
+        while(end > valueStart && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+
+        if(end - valueStart >= 3 && line.charAt(valueStart) == '@' && line.charAt(valueStart + 1) != '@' && line.charAt(end - 1) == '@') {
+            return end - 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the number kept in the table for the record the value of the line points to,
+     * PersonStore.NONE if it isn't known or the value isn't a pointer
+     */
+    private int findPointer(XrefTable table) {
+        int end = pointerEnd();
+        return end < 0 ? PersonStore.NONE : table.find(line, valueStart + 1, end);
+    }
+
+    /**
+     * Start reading the record of a level 0 line, only the records needed in the pass are read
+     */
+    private void startRecord(int pass) {
+        record = OTHER;
+        xref.setLength(0);
+        xref.append(line, xrefStart, xrefEnd);
+        name.setLength(0);
+        notes.setLength(0);
+        recordNoteLinks = noteLinkCount;
+        inNote = false;
+
+        if(pass == 0 && isTag("INDI")) {
+            record = INDI;
+        } else if(pass == 1 && isTag("FAM")) {
+            record = FAM;
+            husband = PersonStore.NONE;
+            wife = PersonStore.NONE;
+            childCount = 0;
+            married = false;
+            linkedPartners.clear();
+        } else if(pass == 1 && isTag("NOTE")) {
+            // Only the note records someone points to are kept
+            noteRecord = noteRecords.find(xref, 0, xref.length());
+
+            if(noteRecord != PersonStore.NONE) {
+                record = NOTE;
+                inNote = true;
+                noteLevel = 0;
+                appendValue(notes);
+            }
+        }
+    }
+
+    /**
+     * Read a line inside the record
+     */
+    private void readRecordLine() {
+        if(inNote) {
+            if(level == noteLevel + 1 && (isTag("CONT") || isTag("CONC"))) {
+                if(isTag("CONT")) {
+                    notes.append('\n');
+                }
+
+                appendValue(notes);
+                return;
+            }
+
+            if(level <= noteLevel) {
+                inNote = false;
+            }
+        }
+
+        if(level != 1) {
+            return;
+        }
+
+        if(record == INDI) {
+            if(isTag("NAME") && name.length() == 0) {
+                appendName();
+            } else if(isTag("NOTE") && pointerEnd() >= 0) {
+                addNoteLink();
+            } else if(isTag("NOTE")) {
+                if(notes.length() > 0) {
+                    notes.append('\n');
+                }
+
+                appendValue(notes);
+                inNote = true;
+                noteLevel = 1;
+            }
+        } else if(record == FAM) {
+            if(isTag("HUSB")) {
+                husband = findPointer(people);
+            } else if(isTag("WIFE")) {
+                wife = findPointer(people);
+            } else if(isTag("CHIL")) {
+                int child = findPointer(people);
+
+                if(child != PersonStore.NONE) {
+                    if(childCount == children.length) {
+                        children = Arrays.copyOf(children, childCount * 2);
+                    }
+
+                    children[childCount++] = child;
+                }
+            } else if(isTag("MARR")) {
+                married = true;
+            } else if(isTag("_SPOU")) {
+                married = true;
+                linkedPartners.add(findPointer(people));
+            }
+        }
+    }
+
+    /**
+     * Keep what was read of the record
+     */
+    private void endRecord() {
+        switch(record) {
+            case INDI:
+                addPerson();
+                break;
+
+            case FAM:
+                linkFamily();
+                break;
+
+            case NOTE:
+                noteTexts[noteRecord] = notes.toString();
+                break;
+        }
+
+        record = OTHER;
+    }
+
+    /**
+     * Add the person of the INDI record under a name no one has
+     */
+    private void addPerson() {
+        if(NameDictionary.nameStart(name) == NameDictionary.nameEnd(name)) {
+            name.setLength(0);
+            name.append("Unnamed");
+        }
+
+        if(nameIndex.find(name) != PersonStore.NONE) {
+            int length = name.length();
+
+            for(int number = 2; nameIndex.find(name) != PersonStore.NONE; number++) {
+                name.setLength(length);
+                name.append(" (").append(number).append(')');
+            }
+        }
+
+        int id = store.add(name);
+        nameIndex.add(id);
+        store.setNotes(id, notes.toString());
+
+        if(xref.length() > 0) {
+            people.put(xref, 0, xref.length(), id);
+        }
+
+        // The note records pointed to in the record were kept with no one, they are the person's now
+        for(int i = recordNoteLinks; i < noteLinkCount; i += 2) {
+            noteLinks[i] = id;
+        }
+    }
+
+    /**
+     * Keep that the person being read points to a note record, the person is added at the end of
+     * the record
+     */
+    private void addNoteLink() {
+        int end = pointerEnd();
+        int note = noteRecords.find(line, valueStart + 1, end);
+
+        if(note == PersonStore.NONE) {
+            note = noteRecords.size();
+            noteRecords.put(line, valueStart + 1, end, note);
+        }
+
+        if(noteLinkCount + 2 > noteLinks.length) {
+            noteLinks = Arrays.copyOf(noteLinks, noteLinks.length * 2);
+        }
+
+        noteLinks[noteLinkCount++] = PersonStore.NONE;
+        noteLinks[noteLinkCount++] = note;
+    }
+
+    /**
+     * Make the husband and wife of the FAM record the parents of its children, and spouses if they
+     * married. Links already made by an earlier family are kept
+     */
+    private void linkFamily() {
+        if(married && husband != PersonStore.NONE && wife != PersonStore.NONE && husband != wife) {
+            boolean bothLinked = linkedPartners.size() == 0;
+
+            if((bothLinked || linkedPartners.indexOf(husband) >= 0) && store.getSpouse(husband) == PersonStore.NONE) {
+                store.setSpouse(husband, wife);
+            }
+
+            if((bothLinked || linkedPartners.indexOf(wife) >= 0) && store.getSpouse(wife) == PersonStore.NONE) {
+                store.setSpouse(wife, husband);
+            }
+        }
+
+        for(int i = 0; i < childCount; i++) {
+            int child = children[i];
+
+            if(husband != PersonStore.NONE && husband != child && store.getDad(child) == PersonStore.NONE) {
+                store.setDad(child, husband);
+            }
+
+            if(wife != PersonStore.NONE && wife != child && store.getMom(child) == PersonStore.NONE) {
+                store.setMom(child, wife);
+            }
+        }
+    }
+
+    /**
+     * Add notes to the ones a person has, on their own line
+     */
+    private void addNotes(int id, String text) {
+        if(text == null || text.isEmpty()) {
+            return;
+        }
+
+        String oldNotes = store.getNotes(id);
+        store.setNotes(id, oldNotes.isEmpty() ? text : oldNotes + "\n" + text);
+    }
+
+    /**
+     * Append the value of the line, an @@ stands for one @
+     */
+    private void appendValue(StringBuilder builder) {
+        for(int i = valueStart; i < line.length(); i++) {
+            builder.append(line.charAt(i));
+
+            if(line.charAt(i) == '@' && i + 1 < line.length() && line.charAt(i + 1) == '@') {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Append the name in the value of the line, the slashes around the surname become spaces and
+     * the words are separated by one space
+     */
+    private void appendName() {
+        for(int i = valueStart; i < line.length(); i++) {
+            char letter = line.charAt(i);
+
+            if(letter == '/' || letter <= ' ') {
+                if(name.length() > 0 && name.charAt(name.length() - 1) != ' ') {
+                    name.append(' ');
+                }
+
+                continue;
+            }
+
+            name.append(letter);
+
+            if(letter == '@' && i + 1 < line.length() && line.charAt(i + 1) == '@') {
+                i++;
+            }
+        }
+
+        if(name.length() > 0 && name.charAt(name.length() - 1) == ' ') {
+            name.setLength(name.length() - 1);
+        }
+    }
+}
@@ -1,400 +1,1104 @@
 package it2051229.genealogy.entities;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
 public class Genealogy implements Serializable {
-    private HashMap<String, Person> people;
+    private PersonStore store;
+
+    // Changes made since they were last saved, and how many changes were ever made
+    private ArrayList<Change> changes = new ArrayList<>();
+    private long changeCount;
+
+    // Changes aren't recorded while this is above zero, e.g. for the links dropped by a removal
+    private transient int changesPaused;
+
+    // Edits that can be undone, not kept while changes saved before are made again
+    private transient History history;
+    private transient int historyPaused;
+
+    // Changes wait for the readers on other threads, readers see the system between changes
+    private transient Lock readLock;
+    private transient Lock writeLock;
+
+    private transient NameIndex nameIndex;
+    private transient ChildrenIndex childrenIndex;
+    private transient AncestryIndex ancestryIndex;
+    private transient FamilyIndex familyIndex;
+    private transient GenerationIndex generationIndex;
+    private transient TrigramIndex trigramIndex;
+    private transient NameCompleter nameCompleter;
 
     /**
      * Initialize the system
      */
     public Genealogy() {
-        people = new HashMap<>();
+        store = new PersonStore();
+        buildIndexes();
     }
 
     /**
      * Initialize the system with predefined data
      */
     public Genealogy(HashMap<String, Person> data) {
-        people = data;
+        store = new PersonStore();
+
+        // Give everyone an id first so the relatives can be found by id
+        IdentityHashMap<Person, Integer> savedIds = new IdentityHashMap<>();
+
+        for(Person person : data.values()) {
+            int id = store.add(person.getName());
+            store.setNotes(id, person.getNotes());
+            savedIds.put(person, id);
+        }
+
+        for(Map.Entry<Person, Integer> entry : savedIds.entrySet()) {
+            Person person = entry.getKey();
+            int id = entry.getValue();
+
+            store.setSpouse(id, savedIdOf(savedIds, person.getSpouse()));
+            store.setDad(id, savedIdOf(savedIds, person.getDad()));
+            store.setMom(id, savedIdOf(savedIds, person.getMom()));
+        }
+
+        buildIndexes();
+    }
+
+    /**
+     * Initialize the system over people already in a store
+     */
+    Genealogy(PersonStore store) {
+        this.store = store;
+        buildIndexes();
+    }
+
+    /**
+     * Find the id given to a saved person, saved relatives that were removed are dropped
+     */
+    private static int savedIdOf(IdentityHashMap<Person, Integer> savedIds, Person person) {
+        Integer id = savedIds.get(person);
+        return id == null ? PersonStore.NONE : id;
+    }
+
+    /**
+     * Rebuild the indexes after the system is passed around
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        buildIndexes();
+    }
+
+    /**
+     * Index everyone in the system
+     */
+    private void buildIndexes() {
+        // Edits made before the system was passed around can't be undone
+        history = new History();
+
+        readLock = store.getLock().readLock();
+        writeLock = store.getLock().writeLock();
+
+        nameIndex = new NameIndex(store);
+        childrenIndex = new ChildrenIndex(store);
+        ancestryIndex = new AncestryIndex(store, childrenIndex);
+        familyIndex = new FamilyIndex(store);
+        generationIndex = new GenerationIndex(store, childrenIndex);
+        trigramIndex = new TrigramIndex(store);
+        nameCompleter = new NameCompleter(store, childrenIndex);
+
+        store.setChangeListener(new ChangeListener() {
+            // Move the child between dads, rank everyone involved again and record it
+            @Override
+            public void onDadChanged(int child, int oldDad, int newDad) {
+                parentChanged(child, oldDad, newDad);
+                recordChange(Change.DAD, store.getName(child), getNameOf(newDad));
+                recordUndo(Change.DAD, store.getName(child), getNameOf(oldDad));
+            }
+
+            // Move the child between moms, rank everyone involved again and record it
+            @Override
+            public void onMomChanged(int child, int oldMom, int newMom) {
+                parentChanged(child, oldMom, newMom);
+                recordChange(Change.MOM, store.getName(child), getNameOf(newMom));
+                recordUndo(Change.MOM, store.getName(child), getNameOf(oldMom));
+            }
+
+            // Move the person between families, rank everyone involved again and record it
+            @Override
+            public void onSpouseChanged(int person, int oldSpouse, int newSpouse) {
+                familyIndex.linkChanged(person, oldSpouse, newSpouse);
+
+                nameCompleter.rankChanged(person);
+                nameCompleter.rankChanged(oldSpouse);
+                nameCompleter.rankChanged(newSpouse);
+
+                recordChange(Change.SPOUSE, store.getName(person), getNameOf(newSpouse));
+                recordUndo(Change.SPOUSE, store.getName(person), getNameOf(oldSpouse));
+            }
+
+            // Record it
+            @Override
+            public void onNotesChanged(int person, String oldNotes) {
+                recordChange(Change.NOTES, store.getName(person), store.getNotes(person));
+                recordUndo(Change.NOTES, store.getName(person), oldNotes);
+            }
+        });
+    }
+
+    /**
+     * Move the child between parents and families in the indexes and rank everyone involved again
+     */
+    private void parentChanged(int child, int oldParent, int newParent) {
+        childrenIndex.parentChanged(child, oldParent, newParent);
+        ancestryIndex.parentChanged(child, newParent);
+        familyIndex.linkChanged(child, oldParent, newParent);
+        generationIndex.parentChanged(child);
+
+        nameCompleter.rankChanged(child);
+        nameCompleter.rankChanged(oldParent);
+        nameCompleter.rankChanged(newParent);
+    }
+
+    /**
+     * Get the name of a person, null for no one
+     */
+    private String getNameOf(int id) {
+        return id == PersonStore.NONE ? null : store.getName(id);
+    }
+
+    /**
+     * Keep the change until it is saved
+     */
+    private void recordChange(byte type, String name, String value) {
+        if(changesPaused == 0) {
+            changes.add(new Change(++changeCount, type, name, value));
+        }
+    }
+
+    /**
+     * Access the lock guarding the system. Every method takes it on its own, holding the read lock
+     * makes several reads see the same system, e.g. to check a name and then read the person
+     */
+    public ReadWriteLock getLock() {
+        return store.getLock();
+    }
+
+    /**
+     * Keep the change reverting a change just made so the edit can be undone
+     */
+    private void recordUndo(byte type, String name, String value) {
+        if(historyPaused == 0) {
+            history.record(new Change(0, type, name, value));
+        }
+    }
+
+    /**
+     * Close the edit going on, the changes made since the last edit are undone together
+     */
+    public void endEdit() {
+        writeLock.lock();
+
+        try {
+            history.endEdit();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Check if there is an edit to undo
+     */
+    public boolean canUndo() {
+        readLock.lock();
+
+        try {
+            return history.canUndo();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Check if there is an undone edit to redo
+     */
+    public boolean canRedo() {
+        readLock.lock();
+
+        try {
+            return history.canRedo();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Revert the last edit, false if there is none
+     */
+    public boolean undo() {
+        writeLock.lock();
+
+        try {
+            return history.undo(this);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Make the last undone edit again, false if there is none
+     */
+    public boolean redo() {
+        writeLock.lock();
+
+        try {
+            return history.redo(this);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Compare an imported genealogy with this one without changing anything, e.g. off the UI
+     * thread before the merge is made. The imported genealogy must not be shared
+     */
+    public MergePlan planMerge(Genealogy imported) {
+        readLock.lock();
+
+        try {
+            return new MergePlan(store, nameIndex, imported.getStore());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Make the changes of a merge as an edit of its own, so it is undone at once and only the
+     * changes are saved
+     */
+    public void merge(MergePlan plan) {
+        writeLock.lock();
+
+        try {
+            history.endEdit();
+
+            for(Change change : plan.getChanges()) {
+                apply(change);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Access the changes made since they were last dropped
+     */
+    List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Forget the first changes once they are saved
+     */
+    void dropChanges(int count) {
+        changes.subList(0, count).clear();
+    }
+
+    /**
+     * Number of changes ever made, including the ones already saved
+     */
+    long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Set the number of changes ever made, for a genealogy read from a file
+     */
+    void setChangeCount(long changeCount) {
+        this.changeCount = changeCount;
+    }
+
+    /**
+     * Make a saved change again without recording it, people that no longer exist are skipped
+     */
+    void applyChange(Change change) {
+        writeLock.lock();
+        changesPaused++;
+        historyPaused++;
+
+        try {
+            apply(change);
+            changeCount = change.getSequence();
+        } finally {
+            changesPaused--;
+            historyPaused--;
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Make a change, people that no longer exist are skipped
+     */
+    void apply(Change change) {
+        Person person = getPerson(change.getName());
+        Person relative = change.getValue() == null ? null : getPerson(change.getValue());
+
+        switch(change.getType()) {
+            case Change.ADD:
+                addPerson(change.getName());
+                break;
+
+            case Change.REMOVE:
+                removePerson(change.getName());
+                break;
+
+            case Change.RENAME:
+                updateName(change.getName(), change.getValue());
+                break;
+
+            case Change.DAD:
+                if(person != null) {
+                    person.setDad(relative);
+                }
+                break;
+
+            case Change.MOM:
+                if(person != null) {
+                    person.setMom(relative);
+                }
+                break;
+
+            case Change.SPOUSE:
+                if(person != null) {
+                    person.setSpouse(relative);
+                }
+                break;
+
+            case Change.NOTES:
+                if(person != null) {
+                    person.setNotes(change.getValue());
+                }
+                break;
+        }
+    }
+
+    /**
+     * Access the store keeping everyone's properties
+     */
+    PersonStore getStore() {
+        return store;
     }
 
     /**
      * Access to the data
      */
     public HashMap<String, Person> getData() {
-        return people;
+        readLock.lock();
+
+        try {
+            HashMap<String, Person> people = new HashMap<>(store.count() * 2);
+
+            for(int id = 0; id < store.size(); id++) {
+                if(store.exists(id)) {
+                    people.put(store.getName(id), store.getView(id));
+                }
+            }
+
+            return people;
+        } finally {
+            readLock.unlock();
+        }
     }
 
     /**
      * Get the names of the people
      */
     public ArrayList<String> getNames() {
-        ArrayList<String> names = new ArrayList<>();
+        readLock.lock();
 
-        for(Map.Entry<String, Person> entry : people.entrySet()) {
-            names.add(entry.getValue().getName());
-        }
+        try {
+            ArrayList<String> names = new ArrayList<>(store.count());
 
-        return names;
+            for(int id = 0; id < store.size(); id++) {
+                if(store.exists(id)) {
+                    names.add(store.getName(id));
+                }
+            }
+
+            return names;
+        } finally {
+            readLock.unlock();
+        }
     }
 
     /**
      * Get all names that has the keyword
      */
     public ArrayList<String> getNamesContaining(String keyword) {
-        keyword = keyword.toLowerCase().trim();
+        readLock.lock();
 
-        // Return everything if the keyword is empty
-        if(keyword.isEmpty()) {
-            return getNames();
-        }
+        try {
+            keyword = keyword.toLowerCase().trim();
 
-        ArrayList<String> names = new ArrayList<>();
+            // Return everything if the keyword is empty
+            if(keyword.isEmpty()) {
+                return getNames();
+            }
 
-        for(Map.Entry<String, Person> entry : people.entrySet()) {
-            Person person = entry.getValue();
+            return trigramIndex.getNamesContaining(keyword);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Get up to limit names having a word that starts with the typed text, names of people having
+     * more relatives come first
+     */
+    public List<String> getCompletions(String text, int limit) {
+        readLock.lock();
 
-            if(person.getName().toLowerCase().contains(keyword)) {
-                names.add(person.getName());
+        try {
+            // The completer remembers rankings as it goes, so only one reader completes at a time
+            synchronized(nameCompleter) {
+                return nameCompleter.getCompletions(text, limit);
             }
+        } finally {
+            readLock.unlock();
         }
-
-        return names;
     }
 
     /**
      * Get all names having partial connections
      */
     public ArrayList<String> getNamesHavingPartialConnections() {
-        ArrayList<String> names = new ArrayList<>();
+        readLock.lock();
 
-        for(Map.Entry<String, Person> entry : people.entrySet()) {
-            Person person = entry.getValue();
+        try {
+            ArrayList<String> names = new ArrayList<>();
 
-            if(person.getSpouse() == null || person.getDad() == null || person.getMom() == null) {
-                names.add(person.getName());
+            for(int id = 0; id < store.size(); id++) {
+                if(store.exists(id) && (store.getSpouse(id) == PersonStore.NONE || store.getDad(id) == PersonStore.NONE || store.getMom(id) == PersonStore.NONE)) {
+                    names.add(store.getName(id));
+                }
             }
-        }
 
-        return names;
+            return names;
+        } finally {
+            readLock.unlock();
+        }
     }
 
     /**
      * Makes names in uniform order. All lower case and first character is upper case
      */
     public String normalizeName(String name) {
-        name = name.trim();
+        int end = NameDictionary.nameEnd(name);
+        StringBuilder normalizedName = new StringBuilder(end);
 
-        // Never normalize an empty name
-        if(name.isEmpty()) {
-            return "";
-        }
+        // Words are separated by one space no matter how many were typed
+        for(int start = NameDictionary.nameStart(name); start < end; start++) {
+            if(name.charAt(start) == ' ') {
+                continue;
+            }
 
-        String[] tokens = name.split(" ");
-        name = "";
+            if(normalizedName.length() > 0) {
+                normalizedName.append(' ');
+            }
+
+            int wordEnd = NameDictionary.wordEnd(name, start, end);
+            normalizedName.append(Character.toUpperCase(NameDictionary.toLowerCase(name.charAt(start))));
 
-        for(String token : tokens) {
-            char[] tokenArray = token.toLowerCase().toCharArray();
-            tokenArray[0] = Character.toUpperCase(tokenArray[0]);
+            for(int i = start + 1; i < wordEnd; i++) {
+                normalizedName.append(NameDictionary.toLowerCase(name.charAt(i)));
+            }
 
-            name += new String(tokenArray) + " ";
+            start = wordEnd;
         }
 
-        return name.trim();
+        return normalizedName.toString();
     }
 
     /**
      * Attempt to add the person's name. It fails if the person's name is not unique
      */
     public boolean addPerson(String name) {
-        name = name.trim();
+        writeLock.lock();
 
-        // Avoid empty names
-        if(name.isEmpty()) {
-            return false;
-        }
+        try {
+            // Avoid empty names
+            if(isBlank(name)) {
+                return false;
+            }
 
-        // Make name uniform
-        name = normalizeName(name);
+            // Avoid duplicates, the store makes the name uniform as it keeps it
+            if(nameIndex.find(name) != PersonStore.NONE) {
+                return false;
+            }
 
-        // Avoid duplicates
-        if(people.containsKey(name)) {
-            return false;
-        }
+            // Add if no duplicates
+            int id = store.add(name);
+            nameIndex.add(id);
+
+            childrenIndex.add(id);
+            ancestryIndex.add(id);
+            familyIndex.add(id);
+            generationIndex.add(id);
+            trigramIndex.add(id);
+            nameCompleter.add(id);
 
-        // Add if no duplicates
-        people.put(name, new Person(name));
-        return true;
+            recordChange(Change.ADD, store.getName(id), null);
+            recordUndo(Change.REMOVE, store.getName(id), null);
+
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     /**
      * Remove the person with the given name
      */
     public boolean removePerson(String name) {
-        Person targetPerson = getPerson(name);
+        writeLock.lock();
 
-        if(targetPerson == null) {
-            return false;
-        }
+        try {
+            int targetId = getId(name);
+
+            if(targetId == PersonStore.NONE) {
+                return false;
+            }
+
+            // The links dropped along the person are part of the removal
+            String targetName = store.getName(targetId);
+            String targetNotes = store.getNotes(targetId);
 
-        // Disconnect the name from any moms and dads
-        for(Map.Entry<String, Person> entry : people.entrySet()) {
-            Person person = entry.getValue();
+            recordChange(Change.REMOVE, targetName, null);
+            changesPaused++;
 
-            if(person.getMom() == targetPerson) {
-                person.setMom(null);
+            // Disconnect the name from any moms and dads, copy since the index changes as we go
+            IntList children = childrenIndex.getChildrenOf(targetId);
+            int[] childIds = new int[children.size()];
+
+            for(int i = 0; i < childIds.length; i++) {
+                childIds[i] = children.get(i);
             }
 
-            if(person.getDad() == targetPerson) {
-                person.setDad(null);
+            for(int child : childIds) {
+                if(store.getMom(child) == targetId) {
+                    store.setMom(child, PersonStore.NONE);
+                }
+
+                if(store.getDad(child) == targetId) {
+                    store.setDad(child, PersonStore.NONE);
+                }
+            }
+
+            // Disconnect the name from anyone having it as a spouse, the column is quick to go through
+            for(int id = 0; id < store.size(); id++) {
+                if(store.getSpouse(id) == targetId && store.exists(id)) {
+                    store.setSpouse(id, PersonStore.NONE);
+                }
             }
-        }
 
-        // Remove the target person
-        people.remove(targetPerson.getName());
+            // Remove the target person
+            nameIndex.remove(targetId);
+            trigramIndex.remove(targetId);
+            nameCompleter.remove(targetId);
+            store.remove(targetId);
+            childrenIndex.remove(targetId);
+            familyIndex.remove(targetId);
 
-        return true;
+            changesPaused--;
+
+            // Undone newest first, so the person comes back before the notes and links
+            recordUndo(Change.NOTES, targetName, targetNotes);
+            recordUndo(Change.ADD, targetName, null);
+
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     /**
      * Search a person by name
      */
     public Person getPerson(String name) {
-        name = name.trim();
+        readLock.lock();
 
-        // Avoid empty name
-        if(name.isEmpty()) {
-            return null;
+        try {
+            return store.getView(getId(name));
+        } finally {
+            readLock.unlock();
         }
+    }
 
-        // Make name uniform
-        name = normalizeName(name);
+    /**
+     * Search the id of a person by name, PersonStore.NONE if not found
+     */
+    private int getId(String name) {
+        // The index makes the words uniform itself without allocating
+        return nameIndex.find(name);
+    }
 
-        // Do a search
-        if(!people.containsKey(name)) {
-            return null;
+    /**
+     * Check if the name has no words
+     */
+    private static boolean isBlank(String name) {
+        return NameDictionary.nameStart(name) >= NameDictionary.nameEnd(name);
+    }
+
+    /**
+     * Check if someone is an ancestor of a person. Making a person the dad or mom of one of their
+     * ancestors would make them their own ancestor
+     */
+    public boolean isAncestor(String ancestorName, String name) {
+        readLock.lock();
+
+        try {
+            return ancestryIndex.isAncestor(getId(ancestorName), getId(name));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Get an id shared by everyone in the person's family, the people connected to them through
+     * dads, moms and spouses, -1 if the person doesn't exist. The id may change when links change
+     */
+    public int getFamilyId(String name) {
+        readLock.lock();
+
+        try {
+            int id = getId(name);
+            return id == PersonStore.NONE ? -1 : familyIndex.getFamily(id);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Number of people in the person's family, themselves included, 0 if the person doesn't exist
+     */
+    public int getFamilySize(String name) {
+        readLock.lock();
+
+        try {
+            int id = getId(name);
+            return id == PersonStore.NONE ? 0 : familyIndex.getFamilySize(id);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Get the names of everyone in the person's family, themselves included
+     */
+    public ArrayList<String> getFamilyOf(String name) {
+        readLock.lock();
+
+        try {
+            int id = getId(name);
+            IntList members = new IntList();
+
+            if(id != PersonStore.NONE) {
+                familyIndex.getFamilyMembers(id, members);
+            }
+
+            return getNamesOf(members);
+        } finally {
+            readLock.unlock();
         }
+    }
 
-        return people.get(name);
+    /**
+     * Get the generation of a person, 1 for the people without parents and one more than the later
+     * of their parents for everyone else, 0 if the person doesn't exist
+     */
+    public int getGeneration(String name) {
+        readLock.lock();
+
+        try {
+            int id = getId(name);
+            return id == PersonStore.NONE ? 0 : generationIndex.getLevel(id) + 1;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Sort names by the generation of the people, earlier generations first and names of the same
+     * generation in the order they were in. Names of no one go last
+     */
+    public void sortByGeneration(List<String> names) {
+        readLock.lock();
+
+        try {
+            // Sort the generations with the position of every name after them, so names of the same
+            // generation keep their order
+            long[] keys = new long[names.size()];
+
+            for(int i = 0; i < keys.length; i++) {
+                int id = getId(names.get(i));
+                long generation = id == PersonStore.NONE ? Integer.MAX_VALUE : generationIndex.getLevel(id);
+                keys[i] = generation << 32 | i;
+            }
+
+            Arrays.sort(keys);
+
+            String[] sorted = new String[keys.length];
+
+            for(int i = 0; i < keys.length; i++) {
+                sorted[i] = names.get((int)keys[i]);
+            }
+
+            for(int i = 0; i < sorted.length; i++) {
+                names.set(i, sorted[i]);
+            }
+        } finally {
+            readLock.unlock();
+        }
     }
 
     /**
      * Get the person's old name and update it to the new name
      */
     public boolean updateName(String oldName, String newName) {
-        oldName = normalizeName(oldName);
-        newName = normalizeName(newName);
+        writeLock.lock();
+
+        try {
+            int id = getId(oldName);
+            int newId = getId(newName);
+
+            // Stop if the new name is taken, unless it only differs from the old name by its case
+            if(newId != PersonStore.NONE) {
+                return newId == id;
+            }
+
+            // Avoid unknown people and empty names
+            if(id == PersonStore.NONE || isBlank(newName)) {
+                return false;
+            }
+
+            String oldNormalizedName = store.getName(id);
+
+            // Perform an update, the indexes still need the old name to find their entries
+            nameIndex.remove(id);
+            trigramIndex.remove(id);
+            nameCompleter.remove(id);
+
+            store.setName(id, newName);
+
+            nameIndex.add(id);
+            trigramIndex.add(id);
+            nameCompleter.add(id);
+
+            recordChange(Change.RENAME, oldNormalizedName, store.getName(id));
+            recordUndo(Change.RENAME, store.getName(id), oldNormalizedName);
 
-        // Skip if the old and new name is the same
-        if(oldName.equalsIgnoreCase(newName)) {
             return true;
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        // Stop if the new name is already taken
-        if(getPerson(newName) != null) {
-            return false;
-        }
+    /**
+     * Get the names of the people having the given ids
+     */
+    private ArrayList<String> getNamesOf(IntList idList) {
+        ArrayList<String> names = new ArrayList<>(idList.size());
 
-        // Perform an update
-        Person person = people.remove(oldName);
-        person.setName(newName);
+        for(int i = 0; i < idList.size(); i++) {
+            names.add(store.getName(idList.get(i)));
+        }
 
-        people.put(newName, person);
-        return true;
+        return names;
     }
 
     /**
      * Get the siblings of a person
      */
     public ArrayList<String> getSiblingsOf(String name) {
-        ArrayList<String> siblings = new ArrayList<>();
+        readLock.lock();
 
-        Person targetPerson = getPerson(name);
+        try {
+            ArrayList<String> siblings = new ArrayList<>();
 
-        if(targetPerson == null) {
-            return siblings;
-        }
+            int targetId = getId(name);
+
+            if(targetId == PersonStore.NONE) {
+                return siblings;
+            }
 
-        for(Map.Entry<String, Person> entry : people.entrySet()) {
-            Person person = entry.getValue();
+            // They are siblings if the target person and the person has the same mom or dad, the
+            // children index lists a parent's children whether the parent is their dad or mom
+            int dad = store.getDad(targetId);
+            int mom = store.getMom(targetId);
+            IntList dadsChildren = childrenIndex.getChildrenOf(dad);
+            IntList momsChildren = childrenIndex.getChildrenOf(mom);
 
-            // Skip if the person is the same as the other person
-            if(person.compareTo(targetPerson) == 0) {
-                continue;
+            for(int i = 0; i < dadsChildren.size(); i++) {
+                int id = dadsChildren.get(i);
+
+                // Skip if the person is the same as the other person
+                if(id != targetId && store.getDad(id) == dad) {
+                    siblings.add(store.getName(id));
+                }
             }
 
-            // They are siblings if the target person and the person has the same mom or dad
-            if((targetPerson.getDad() != null && person.getDad() != null && targetPerson.getDad().compareTo(person.getDad()) == 0) ||
-                    (targetPerson.getMom() != null && person.getMom() != null && targetPerson.getMom().compareTo(person.getMom()) == 0)) {
-                siblings.add(person.getName());
+            for(int i = 0; i < momsChildren.size(); i++) {
+                int id = momsChildren.get(i);
+
+                // Children of both parents were already found through the dad
+                if(id != targetId && store.getMom(id) == mom && (dad == PersonStore.NONE || store.getDad(id) != dad)) {
+                    siblings.add(store.getName(id));
+                }
             }
-        }
 
-        return siblings;
+            return siblings;
+        } finally {
+            readLock.unlock();
+        }
     }
 
     /**
      * Get the grand parents of a person
      */
     public ArrayList<String> getGrandParentsOf(String name) {
-        ArrayList<String> grandParents = new ArrayList<>();
+        readLock.lock();
 
-        Person targetPerson = getPerson(name);
+        try {
+            ArrayList<String> grandParents = new ArrayList<>();
 
-        if(targetPerson == null) {
-            return grandParents;
-        }
+            int targetId = getId(name);
 
-        if(targetPerson.getDad() != null) {
-            if(targetPerson.getDad().getDad() != null) {
-                grandParents.add(targetPerson.getDad().getDad().getName());
+            if(targetId == PersonStore.NONE) {
+                return grandParents;
             }
 
-            if(targetPerson.getDad().getMom() != null) {
-                grandParents.add(targetPerson.getDad().getMom().getName());
-            }
-        }
+            for(int parent : new int[] { store.getDad(targetId), store.getMom(targetId) }) {
+                if(parent == PersonStore.NONE) {
+                    continue;
+                }
 
-        if(targetPerson.getMom() != null) {
-            if(targetPerson.getMom().getDad() != null) {
-                grandParents.add(targetPerson.getMom().getDad().getName());
-            }
+                if(store.getDad(parent) != PersonStore.NONE) {
+                    grandParents.add(store.getName(store.getDad(parent)));
+                }
 
-            if(targetPerson.getMom().getMom() != null) {
-                grandParents.add(targetPerson.getMom().getMom().getName());
+                if(store.getMom(parent) != PersonStore.NONE) {
+                    grandParents.add(store.getName(store.getMom(parent)));
+                }
             }
-        }
 
-        return grandParents;
+            return grandParents;
+        } finally {
+            readLock.unlock();
+        }
     }
 
     /**
      * Get the children of the person
      */
     public ArrayList<String> getChildrenOf(String name) {
-        ArrayList<String> children = new ArrayList<>();
+        readLock.lock();
 
-        Person targetPerson = getPerson(name);
-
-        if(targetPerson == null) {
-            return children;
-        }
+        try {
+            int targetId = getId(name);
 
-        for(Map.Entry<String, Person> entry : people.entrySet()) {
-            Person person = entry.getValue();
-
-            if((person.getDad() != null && person.getDad() == targetPerson) ||
-               (person.getMom() != null && person.getMom() == targetPerson)) {
-                children.add(person.getName());
+            if(targetId == PersonStore.NONE) {
+                return new ArrayList<>();
             }
-        }
 
-        return children;
+            return getNamesOf(childrenIndex.getChildrenOf(targetId));
+        } finally {
+            readLock.unlock();
+        }
     }
 
     /**
      * Get the grand children of a person
      */
     public ArrayList<String> getGrandChildrenOf(String name) {
-        ArrayList<String> grandChildren = new ArrayList<>();
+        readLock.lock();
 
-        Person targetPerson = getPerson(name);
+        try {
+            ArrayList<String> grandChildren = new ArrayList<>();
 
-        if(targetPerson == null) {
-            return grandChildren;
-        }
+            int targetId = getId(name);
 
-        ArrayList<String> children = getChildrenOf(name);
+            if(targetId == PersonStore.NONE) {
+                return grandChildren;
+            }
 
-        for(String childName : children) {
-            grandChildren.addAll(getChildrenOf(childName));
-        }
+            IntList children = childrenIndex.getChildrenOf(targetId);
+
+            for(int i = 0; i < children.size(); i++) {
+                grandChildren.addAll(getNamesOf(childrenIndex.getChildrenOf(children.get(i))));
+            }
 
-        return grandChildren;
+            return grandChildren;
+        } finally {
+            readLock.unlock();
+        }
     }
 
     /**
      * Build the family tree of a person starting from that person going down below
      */
     public String buildFamilyTreeOf(String name) {
-        if(name.isEmpty() || !people.containsKey(name)) {
+        DescendantTree tree = getDescendantTree(name, Integer.MAX_VALUE);
+
+        if(tree == null) {
             return "";
         }
 
         StringBuilder treeBuilder = new StringBuilder();
-        buildFamilyTreeOf(name, treeBuilder, "", true);
+        tree.write(treeBuilder, Integer.MAX_VALUE);
 
         return treeBuilder.toString();
     }
 
     /**
-     * A helper method to recursively build the tree of a person
+     * Get the tree of a person's descendants down to the number of generations below the person,
+     * written a few lines at a time. Null if the person doesn't exist
      */
-    private void buildFamilyTreeOf(String name, StringBuilder treeBuilder, String prefix, boolean isTail) {
-        String spouseName = "";
-
-        if(people.get(name).getSpouse() != null) {
-            spouseName = people.get(name).getSpouse().getName();
-        }
-
-        if(spouseName.isEmpty()) {
-            treeBuilder.append(prefix + (isTail ? "└── " : "├── ") + name + "\n");
-        } else {
-            treeBuilder.append(prefix + (isTail ? "└── " : "├── ") + name + " & " + spouseName + "\n");
-        }
-
-        ArrayList<String> children = getChildrenOf(name);
-
-        for(int i = 0; i < children.size() - 1; i++) {
-            String childName = children.get(i);
-            buildFamilyTreeOf(childName, treeBuilder, prefix + (isTail ? "    " : "│   "), false);
+    public DescendantTree getDescendantTree(String name, int maxDepth) {
+        readLock.lock();
+
+        try {
+            int id = getId(name);
+            return id == PersonStore.NONE ? null : new DescendantTree(this, store, childrenIndex, id, maxDepth);
+        } finally {
+            readLock.unlock();
         }
+    }
 
-        if(!children.isEmpty()) {
-            String childName = children.get(children.size() - 1);
-            buildFamilyTreeOf(childName, treeBuilder, prefix + (isTail ? "    " : "│   "), true);
+    /**
+     * Get the Ahnentafel chart of a person's ancestors over the number of generations, the
+     * person's own included, written a few lines at a time. Null if the person doesn't exist
+     */
+    public AncestorChart getAncestorChart(String name, int generations) {
+        readLock.lock();
+
+        try {
+            int id = getId(name);
+            return id == PersonStore.NONE ? null : new AncestorChart(this, store, id, generations);
+        } finally {
+            readLock.unlock();
         }
     }
 
     /**
-     * Generate a graph between relatives
+     * Generate a graph between relatives, the nodes of the graph use the same ids as the people
      */
     public Graph buildGraph() {
-        Graph graph = new Graph();
-
-        // Add all names
-        for(Map.Entry<String, Person> entry : people.entrySet()) {
-            Person person = entry.getValue();
-            graph.add(person.getName());
-        }
+        readLock.lock();
 
-        // Connect the names
-        for(Map.Entry<String, Person> entry : people.entrySet()) {
-            Person person = entry.getValue();
+        try {
+            String[] names = new String[store.size()];
 
-            if(person.getDad() != null) {
-                graph.connect(person.getName(), person.getDad().getName(), "Dad");
+            for(int id = 0; id < names.length; id++) {
+                names[id] = store.getName(id);
             }
 
-            if(person.getMom() != null) {
-                graph.connect(person.getName(), person.getMom().getName(), "Mom");
+            // Count the edges of each person so their rows can be laid out one after the other
+            int[] offsets = new int[names.length + 1];
+
+            for(int id = 0; id < names.length; id++) {
+                if(!store.exists(id)) {
+                    continue;
+                }
+
+                int degree = childrenIndex.getChildrenOf(id).size();
+
+                if(store.getDad(id) != PersonStore.NONE) {
+                    degree++;
+                }
+
+                if(store.getMom(id) != PersonStore.NONE) {
+                    degree++;
+                }
+
+                if(store.getSpouse(id) != PersonStore.NONE) {
+                    degree++;
+                }
+
+                offsets[id + 1] = degree;
             }
 
-            if(person.getSpouse() != null) {
-                graph.connect(person.getName(), person.getSpouse().getName(), "Spouse");
+            for(int i = 0; i < names.length; i++) {
+                offsets[i + 1] += offsets[i];
             }
 
-            ArrayList<String> children = getChildrenOf(person.getName());
+            // Connect the names
+            int[] targets = new int[offsets[names.length]];
+            byte[] relationships = new byte[targets.length];
+
+            for(int id = 0; id < names.length; id++) {
+                if(!store.exists(id)) {
+                    continue;
+                }
+
+                int edge = offsets[id];
+
+                if(store.getDad(id) != PersonStore.NONE) {
+                    targets[edge] = store.getDad(id);
+                    relationships[edge++] = Graph.DAD;
+                }
+
+                if(store.getMom(id) != PersonStore.NONE) {
+                    targets[edge] = store.getMom(id);
+                    relationships[edge++] = Graph.MOM;
+                }
 
-            for(String childName : children) {
-                graph.connect(person.getName(), childName, "Child");
+                if(store.getSpouse(id) != PersonStore.NONE) {
+                    targets[edge] = store.getSpouse(id);
+                    relationships[edge++] = Graph.SPOUSE;
+                }
+
+                IntList children = childrenIndex.getChildrenOf(id);
+
+                for(int i = 0; i < children.size(); i++) {
+                    targets[edge] = children.get(i);
+                    relationships[edge++] = Graph.CHILD;
+                }
             }
+
+            return new Graph(names, offsets, targets, relationships);
+        } finally {
+            readLock.unlock();
         }
+    }
 
-        return graph;
+    /**
+     * Build an index for working out how relatives are related, the ids are the same as the people
+     */
+    public KinshipIndex buildKinshipIndex() {
+        readLock.lock();
+
+        try {
+            String[] names = new String[store.size()];
+            int[] dads = new int[names.length];
+            int[] moms = new int[names.length];
+
+            for(int id = 0; id < names.length; id++) {
+                names[id] = store.getName(id);
+                dads[id] = store.getDad(id);
+                moms[id] = store.getMom(id);
+            }
+
+            return new KinshipIndex(names, dads, moms);
+        } finally {
+            readLock.unlock();
+        }
     }
 }
@@ -0,0 +1,505 @@
+package it2051229.genealogy.entities;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Saves and loads the genealogy in a compact binary file. The file starts with a header holding a
+ * magic number, the format version and the number of sections. Every section has a type, a length,
+ * its content and a checksum of the content, so damaged files are detected and sections unknown to
+ * an older version can be skipped. People are numbered without holes and their relatives are
+ * written as columns of those numbers, so nothing is recursive.
+ */
+public class GenealogyFile {
+    /**
+     * Version of the format written by this class
+     */
+    public static final int VERSION = 1;
+
+    // "GNLG"
+    private static final int MAGIC = 0x474E4C47;
+
+    // Types of the sections
+    private static final int WORDS = 1;
+    private static final int PEOPLE = 2;
+    private static final int LINKS = 3;
+    private static final int NOTES = 4;
+    private static final int CHANGES = 5;
+
+    /**
+     * Write the genealogy to the file, the file is only replaced once everything was written
+     */
+    public static void write(Genealogy genealogy, File file) throws IOException {
+        write(genealogy.getStore(), genealogy.getChangeCount(), file);
+    }
+
+    /**
+     * Write the people of the store and how many changes made them to the file
+     */
+    static void write(PersonStore store, long changeCount, File file) throws IOException {
+        NameDictionary dictionary = store.getDictionary();
+
+        // Number the people and the words they use without holes
+        int[] personIds = new int[store.size()];
+        int[] wordIds = new int[dictionary.size()];
+        IntList words = new IntList();
+        int count = 0;
+
+        Arrays.fill(wordIds, PersonStore.NONE);
+
+        for(int id = 0; id < store.size(); id++) {
+            if(!store.exists(id)) {
+                personIds[id] = PersonStore.NONE;
+                continue;
+            }
+
+            personIds[id] = count++;
+
+            for(int i = 0; i < store.getNameLength(id); i++) {
+                int token = store.getNameToken(id, i);
+
+                if(wordIds[token] == PersonStore.NONE) {
+                    wordIds[token] = words.size();
+                    words.add(token);
+                }
+            }
+        }
+
+        Section wordSection = new Section(WORDS);
+        wordSection.putVarInt(words.size());
+
+        for(int i = 0; i < words.size(); i++) {
+            wordSection.putString(dictionary.get(words.get(i)));
+        }
+
+        Section peopleSection = new Section(PEOPLE);
+        Section noteSection = new Section(NOTES);
+        int noteCount = 0;
+
+        peopleSection.putVarInt(count);
+
+        for(int id = 0; id < store.size(); id++) {
+            if(personIds[id] == PersonStore.NONE) {
+                continue;
+            }
+
+            peopleSection.putVarInt(store.getNameLength(id));
+
+            for(int i = 0; i < store.getNameLength(id); i++) {
+                peopleSection.putVarInt(wordIds[store.getNameToken(id, i)]);
+            }
+
+            if(!store.getNotes(id).isEmpty()) {
+                noteCount++;
+            }
+        }
+
+        noteSection.putVarInt(noteCount);
+
+        for(int id = 0; id < store.size(); id++) {
+            if(personIds[id] != PersonStore.NONE && !store.getNotes(id).isEmpty()) {
+                noteSection.putVarInt(personIds[id]);
+                noteSection.putString(store.getNotes(id));
+            }
+        }
+
+        // Relatives are whole ints so the columns can be read without decoding
+        Section linkSection = new Section(LINKS);
+        linkSection.putInt(count);
+
+        for(int column = 0; column < 3; column++) {
+            for(int id = 0; id < store.size(); id++) {
+                if(personIds[id] == PersonStore.NONE) {
+                    continue;
+                }
+
+                int relative = column == 0 ? store.getDad(id) : column == 1 ? store.getMom(id) : store.getSpouse(id);
+                linkSection.putInt(relative == PersonStore.NONE ? PersonStore.NONE : personIds[relative]);
+            }
+        }
+
+        // Changes in the journal up to this count are already in the file
+        Section changeSection = new Section(CHANGES);
+        changeSection.putLong(changeCount);
+
+        Section[] sections = { wordSection, peopleSection, linkSection, noteSection, changeSection };
+
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(sections.length);
+        header.putInt(checksum(header.array(), 0, 12));
+        header.flip();
+
+        // Write next to the file first so a failure never leaves a half written file behind
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temporaryFile);
+
+        try {
+            FileChannel channel = out.getChannel();
+            writeFully(channel, header);
+
+            for(Section section : sections) {
+                section.writeTo(channel);
+            }
+
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+
+        if(!temporaryFile.renameTo(file)) {
+            throw new IOException("Failed to replace " + file.getPath());
+        }
+    }
+
+    /**
+     * Read a genealogy from the file with one sequential read
+     */
+    public static Genealogy read(File file) throws IOException {
+        ByteBuffer data;
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            data = ByteBuffer.allocate((int)channel.size());
+
+            while(data.hasRemaining() && channel.read(data) >= 0) {
+                // Keep reading until the whole file is in
+            }
+
+            data.flip();
+        } finally {
+            in.close();
+        }
+
+        try {
+            return read(data);
+        } catch(BufferUnderflowException e) {
+            throw new IOException("The file " + file.getPath() + " is cut short");
+        }
+    }
+
+    /**
+     * Read a genealogy from the content of a file
+     */
+    private static Genealogy read(ByteBuffer data) throws IOException {
+        if(data.remaining() < 16 || data.getInt() != MAGIC) {
+            throw new IOException("Not a genealogy file");
+        }
+
+        int version = data.getInt();
+        int sectionCount = data.getInt();
+
+        if(data.getInt() != checksum(data.array(), 0, 12)) {
+            throw new IOException("The header of the file is damaged");
+        }
+
+        if(version > VERSION) {
+            throw new IOException("The file was saved by a newer version " + version);
+        }
+
+        PersonStore store = new PersonStore();
+        int[] wordIds = null;
+        int count = -1;
+        long changeCount = 0;
+
+        for(int i = 0; i < sectionCount; i++) {
+            int type = data.getInt();
+            int length = data.getInt();
+
+            if(length < 0 || length + 4 > data.remaining()) {
+                throw new IOException("A section of the file is cut short");
+            }
+
+            int start = data.position();
+
+            if(data.getInt(start + length) != checksum(data.array(), start, length)) {
+                throw new IOException("A section of the file is damaged");
+            }
+
+            ByteBuffer content = data.duplicate();
+            content.limit(start + length);
+            data.position(start + length + 4);
+
+            if(type == WORDS) {
+                wordIds = readWords(content, store.getDictionary());
+            } else if(type == PEOPLE) {
+                count = readPeople(content, store, wordIds);
+            } else if(type == LINKS) {
+                readLinks(content, store, count);
+            } else if(type == NOTES) {
+                readNotes(content, store, count);
+            } else if(type == CHANGES) {
+                changeCount = content.getLong();
+            }
+
+            // Sections of a newer version are skipped
+        }
+
+        if(count == -1) {
+            throw new IOException("The file has no people");
+        }
+
+        Genealogy genealogy = new Genealogy(store);
+        genealogy.setChangeCount(changeCount);
+
+        return genealogy;
+    }
+
+    /**
+     * Put the words in the dictionary and get the dictionary id of each word in the file
+     */
+    private static int[] readWords(ByteBuffer content, NameDictionary dictionary) throws IOException {
+        int[] wordIds = new int[getVarInt(content)];
+
+        for(int i = 0; i < wordIds.length; i++) {
+            String word = getString(content);
+
+            if(word.isEmpty()) {
+                throw new IOException("The file has an empty word");
+            }
+
+            wordIds[i] = dictionary.add(word, 0, word.length());
+        }
+
+        return wordIds;
+    }
+
+    /**
+     * Add the people to the store and get how many there are
+     */
+    private static int readPeople(ByteBuffer content, PersonStore store, int[] wordIds) throws IOException {
+        if(wordIds == null) {
+            throw new IOException("The people of the file come before their words");
+        }
+
+        int count = getVarInt(content);
+        int[] tokens = new int[4];
+
+        for(int id = 0; id < count; id++) {
+            int length = getVarInt(content);
+
+            if(length == 0) {
+                throw new IOException("The file has a person without a name");
+            }
+
+            if(length > tokens.length) {
+                tokens = new int[length];
+            }
+
+            for(int i = 0; i < length; i++) {
+                int word = getVarInt(content);
+
+                if(word >= wordIds.length) {
+                    throw new IOException("The file has a name with an unknown word");
+                }
+
+                tokens[i] = wordIds[word];
+            }
+
+            store.add(tokens, length);
+        }
+
+        return count;
+    }
+
+    /**
+     * Connect the people to their dads, moms and spouses
+     */
+    private static void readLinks(ByteBuffer content, PersonStore store, int count) throws IOException {
+        if(content.getInt() != count) {
+            throw new IOException("The relatives of the file don't match its people");
+        }
+
+        for(int column = 0; column < 3; column++) {
+            for(int id = 0; id < count; id++) {
+                int relative = content.getInt();
+
+                if(relative < PersonStore.NONE || relative >= count) {
+                    throw new IOException("The file has an unknown relative");
+                }
+
+                if(column == 0) {
+                    store.setDad(id, relative);
+                } else if(column == 1) {
+                    store.setMom(id, relative);
+                } else {
+                    store.setSpouse(id, relative);
+                }
+            }
+        }
+    }
+
+    /**
+     * Give the people their notes
+     */
+    private static void readNotes(ByteBuffer content, PersonStore store, int count) throws IOException {
+        int noteCount = getVarInt(content);
+
+        for(int i = 0; i < noteCount; i++) {
+            int id = getVarInt(content);
+
+            if(id >= count) {
+                throw new IOException("The file has notes of an unknown person");
+            }
+
+            store.setNotes(id, getString(content));
+        }
+    }
+
+    /**
+     * Read a number written with putVarInt
+     */
+    private static int getVarInt(ByteBuffer content) throws IOException {
+        int value = 0;
+
+        for(int shift = 0; shift < 32; shift += 7) {
+            byte b = content.get();
+            value |= (b & 0x7F) << shift;
+
+            if(b >= 0) {
+                if(value < 0) {
+                    throw new IOException("The file has a negative count");
+                }
+
+                return value;
+            }
+        }
+
+        throw new IOException("The file has a number that is too long");
+    }
+
+    /**
+     * Read a String written with putString
+     */
+    private static String getString(ByteBuffer content) throws IOException {
+        int length = getVarInt(content);
+
+        if(length > content.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        String text = new String(content.array(), content.position(), length, "UTF-8");
+        content.position(content.position() + length);
+
+        return text;
+    }
+
+    /**
+     * Compute the checksum of a part of an array
+     */
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Write everything left in the buffer
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * The content of a section being written
+     */
+    private static class Section {
+        private int type;
+        private ByteBuffer buffer;
+
+        /**
+         * Start an empty section
+         */
+        public Section(int type) {
+            this.type = type;
+            buffer = ByteBuffer.allocate(1024);
+        }
+
+        /**
+         * Make room for more bytes
+         */
+        private void ensureRemaining(int length) {
+            if(buffer.remaining() >= length) {
+                return;
+            }
+
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        /**
+         * Append a whole int
+         */
+        public void putInt(int value) {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+        /**
+         * Append a whole long
+         */
+        public void putLong(long value) {
+            ensureRemaining(8);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Append a count or id that is not negative, small numbers take a single byte
+         */
+        public void putVarInt(int value) {
+            ensureRemaining(5);
+
+            while((value & ~0x7F) != 0) {
+                buffer.put((byte)((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+
+            buffer.put((byte)value);
+        }
+
+        /**
+         * Append the length and UTF-8 bytes of a String
+         */
+        public void putString(String text) throws IOException {
+            byte[] bytes = text.getBytes("UTF-8");
+
+            putVarInt(bytes.length);
+            ensureRemaining(bytes.length);
+            buffer.put(bytes);
+        }
+
+        /**
+         * Write the type, length, content and checksum of the section
+         */
+        public void writeTo(FileChannel channel) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(type);
+            header.putInt(buffer.position());
+            header.flip();
+
+            ByteBuffer footer = ByteBuffer.allocate(4);
+            footer.putInt(checksum(buffer.array(), 0, buffer.position()));
+            footer.flip();
+
+            buffer.flip();
+
+            writeFully(channel, header);
+            writeFully(channel, buffer);
+            writeFully(channel, footer);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package it2051229.genealogy.entities;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads a file in some format into a new genealogy, off the UI thread
+ */
+public interface GenealogyImporter {
+
+    /**
+     * Read the file into a new genealogy, null if the import was cancelled
+     */
+    Genealogy read(File file, ProgressListener listener) throws IOException;
+
+    /**
+     * Stop the import going on, read returns null
+     */
+    void cancel();
+}
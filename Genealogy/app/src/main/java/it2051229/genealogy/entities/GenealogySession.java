@@ -0,0 +1,107 @@
+package it2051229.genealogy.entities;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.HashMap;
+
+/**
+ * The genealogy shared by every activity of the app, so only names are passed between activities
+ * instead of the whole genealogy. It is loaded the first time an activity asks for it, which is
+ * also what happens when the app is started again after being stopped by the system. Activities
+ * validate their edits first and change the genealogy only when the edit is confirmed, then tell
+ * the session so the changes are saved.
+ */
+public class GenealogySession {
+    // Internal files holding the data, the old one was written before the binary format
+    private static final String DATA_FILE = "genealogy.dat";
+    private static final String JOURNAL_FILE = "genealogy.journal";
+    private static final String OLD_DATA_FILE = "data.dat";
+
+    private static GenealogySession session;
+
+    private Genealogy genealogy;
+    private SaveScheduler saveScheduler;
+
+    /**
+     * Access the session of the app, loading the genealogy the first time
+     */
+    public static synchronized GenealogySession get(Context context) {
+        if(session == null) {
+            session = new GenealogySession(context.getApplicationContext());
+        }
+
+        return session;
+    }
+
+    /**
+     * Load the genealogy from internal files, data saved by older versions is moved to the current
+     * files once
+     */
+    private GenealogySession(Context context) {
+        GenealogyStorage storage = new GenealogyStorage(context.getFileStreamPath(DATA_FILE), context.getFileStreamPath(JOURNAL_FILE));
+        saveScheduler = new SaveScheduler(storage, SaveScheduler.DEFAULT_DELAY);
+
+        try {
+            if(storage.exists()) {
+                genealogy = storage.load();
+                return;
+            }
+
+            FileInputStream fis = context.openFileInput(OLD_DATA_FILE);
+            ObjectInputStream ois = new ObjectInputStream(fis);
+
+            genealogy = new Genealogy((HashMap<String, Person>)ois.readObject());
+
+            fis.close();
+            ois.close();
+
+            // The old file is only dropped once the data is safe in the new one
+            storage.saveSnapshot(genealogy);
+            context.deleteFile(OLD_DATA_FILE);
+        } catch(Exception e) {
+            Log.e("GenealogySession()", e.getMessage());
+            genealogy = new Genealogy();
+        }
+    }
+
+    /**
+     * Access the shared genealogy
+     */
+    public Genealogy getGenealogy() {
+        return genealogy;
+    }
+
+    /**
+     * End the edit made to the genealogy so it is undone as one, and save its changes, the writing
+     * is done in the background
+     */
+    public void changed() {
+        genealogy.endEdit();
+        saveScheduler.markDirty(genealogy);
+    }
+
+    /**
+     * Share a new genealogy in place of the current one and save it in full, e.g. after an import
+     */
+    public void replace(Genealogy genealogy) {
+        this.genealogy = genealogy;
+        saveScheduler.markReplaced(genealogy);
+    }
+
+    /**
+     * Make sure every change is on the disk before the app can be stopped
+     */
+    public void flush() {
+        try {
+            saveScheduler.flush(genealogy);
+        } catch(IOException e) {
+            Log.e("flush()", e.getMessage());
+        }
+
+        Log.d("flush()", saveScheduler.toString());
+    }
+}
@@ -0,0 +1,166 @@
+package it2051229.genealogy.entities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Keeps the genealogy on disk as a full save plus a journal of the changes made after it. Saving
+ * only appends the new changes to the journal. Once the journal grows bigger than the full save it
+ * is folded into a new full save. What is saved is first taken from the genealogy, so the writing
+ * can be done on another thread while the genealogy keeps changing.
+ */
+public class GenealogyStorage {
+    /**
+     * Journals smaller than this are never folded into a new full save
+     */
+    public static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+    private File snapshotFile;
+    private Journal journal;
+
+    // Number of changes taken for saving, a genealogy that didn't grow from them is taken in full
+    private long savedChangeCount;
+
+    /**
+     * Create a storage made of the full save file and the journal file
+     */
+    public GenealogyStorage(File snapshotFile, File journalFile) {
+        this.snapshotFile = snapshotFile;
+        journal = new Journal(journalFile);
+    }
+
+    /**
+     * Check if anything was saved before
+     */
+    public boolean exists() {
+        return snapshotFile.exists() || journal.exists();
+    }
+
+    /**
+     * Read the full save and make the changes of the journal after it
+     */
+    public Genealogy load() throws IOException {
+        Genealogy genealogy = snapshotFile.exists() ? GenealogyFile.read(snapshotFile) : new Genealogy();
+
+        journal.replay(genealogy);
+        savedChangeCount = genealogy.getChangeCount();
+
+        return genealogy;
+    }
+
+    /**
+     * Save the changes made since the last save
+     */
+    public void save(Genealogy genealogy) throws IOException {
+        Save save = takeChanges(genealogy, false);
+
+        if(save != null) {
+            write(Collections.singletonList(save));
+        }
+    }
+
+    /**
+     * Write the whole genealogy and drop the journal
+     */
+    public void saveSnapshot(Genealogy genealogy) throws IOException {
+        write(Collections.singletonList(takeChanges(genealogy, true)));
+    }
+
+    /**
+     * Take what needs to be saved out of the genealogy, null if nothing changed. The genealogy is
+     * taken in full when asked or when it didn't grow from what was taken before, e.g. after an
+     * import
+     */
+    Save takeChanges(Genealogy genealogy, boolean whole) {
+        Lock lock = genealogy.getLock().writeLock();
+        lock.lock();
+
+        try {
+            List<Change> changes = genealogy.getChanges();
+            long changeCount = genealogy.getChangeCount();
+            Save save;
+
+            if(whole || changeCount - changes.size() != savedChangeCount) {
+                save = new Save(genealogy.getStore().copy(), changeCount, new ArrayList<Change>());
+            } else if(changes.isEmpty()) {
+                return null;
+            } else {
+                save = new Save(null, changeCount, new ArrayList<>(changes));
+            }
+
+            genealogy.dropChanges(changes.size());
+            savedChangeCount = changeCount;
+
+            return save;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write what was taken, oldest first. Only the newest full copy is written, followed by the
+     * changes taken after it in one append. Only done on one thread at a time
+     */
+    void write(List<Save> saves) throws IOException {
+        int first = 0;
+
+        for(int i = saves.size() - 1; i >= 0; i--) {
+            Save save = saves.get(i);
+
+            if(save.store != null) {
+                GenealogyFile.write(save.store, save.changeCount, snapshotFile);
+                journal.clear();
+                first = i + 1;
+                break;
+            }
+        }
+
+        ArrayList<Change> changes = new ArrayList<>();
+
+        for(int i = first; i < saves.size(); i++) {
+            changes.addAll(saves.get(i).changes);
+        }
+
+        journal.append(changes);
+
+        if(journal.length() > Math.max(MIN_COMPACTION_SIZE, snapshotFile.length())) {
+            compact();
+        }
+    }
+
+    /**
+     * Fold the journal into a new full save. The full save is read back and the journal is made
+     * on it, so it can be done away from the genealogy being edited. A crash before the journal is
+     * dropped is harmless since the new full save knows which changes it has
+     */
+    private void compact() throws IOException {
+        Genealogy genealogy = snapshotFile.exists() ? GenealogyFile.read(snapshotFile) : new Genealogy();
+
+        journal.replay(genealogy);
+        GenealogyFile.write(genealogy, snapshotFile);
+        journal.clear();
+    }
+
+    /**
+     * What was taken out of the genealogy to be written, a full copy of the people or the changes
+     * made since the last time
+     */
+    static class Save {
+        private PersonStore store;
+        private long changeCount;
+        private List<Change> changes;
+
+        /**
+         * Create a save of a full copy, null for only the changes
+         */
+        public Save(PersonStore store, long changeCount, List<Change> changes) {
+            this.store = store;
+            this.changeCount = changeCount;
+            this.changes = changes;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package it2051229.genealogy.entities;
+
+import java.util.Arrays;
+
+/**
+ * The generation of everyone, one below the latest generation of their dad and mom, with the
+ * people without parents in the first generation. The generations order everyone so parents always
+ * come before their children. When a link changes only the child and the descendants whose
+ * generation moves because of it are given a new one. A change moving a great many of them, as
+ * happens while linking a large family, or any change while someone is their own ancestor, gives
+ * everyone their generation again in one go before the next question instead.
+ */
+class GenerationIndex {
+    // Most people a changed link moves before everyone is left to be given their generation again
+    private static final int MAX_MOVED = 256;
+
+    private PersonStore store;
+    private ChildrenIndex childrenIndex;
+
+    // The generation of every person counting from 0
+    private int[] levels;
+
+    // Set when the generations must all be given again before they are asked for
+    private boolean stale;
+
+    // Set when someone is their own ancestor, their descendants can't be moved one by one
+    private boolean looped;
+
+    // The people whose generation may have moved, gone through from the head
+    private IntList queue = new IntList();
+
+    /**
+     * Create an index of everyone in the store
+     */
+    public GenerationIndex(PersonStore store, ChildrenIndex childrenIndex) {
+        this.store = store;
+        this.childrenIndex = childrenIndex;
+
+        levels = new int[Math.max(16, store.size())];
+        relevelAll();
+    }
+
+    /**
+     * Give everyone their generation going down from the people without parents, a child is
+     * taken once all of their parents are. People who are their own ancestor are never taken and
+     * keep the generation their other parents give them
+     */
+    private void relevelAll() {
+        int size = store.size();
+
+        if(size > levels.length) {
+            levels = Arrays.copyOf(levels, size);
+        }
+
+        int[] pendingParents = new int[size];
+        int existing = 0;
+        queue.clear();
+
+        for(int id = 0; id < size; id++) {
+            levels[id] = 0;
+
+            if(!store.exists(id)) {
+                continue;
+            }
+
+            int dad = store.getDad(id);
+            int mom = store.getMom(id);
+            pendingParents[id] = (dad != PersonStore.NONE ? 1 : 0) + (mom != PersonStore.NONE && mom != dad ? 1 : 0);
+            existing++;
+
+            if(pendingParents[id] == 0) {
+                queue.add(id);
+            }
+        }
+
+        for(int head = 0; head < queue.size(); head++) {
+            int parent = queue.get(head);
+            IntList children = childrenIndex.getChildrenOf(parent);
+
+            for(int i = 0; i < children.size(); i++) {
+                int child = children.get(i);
+                levels[child] = Math.max(levels[child], levels[parent] + 1);
+
+                if(--pendingParents[child] == 0) {
+                    queue.add(child);
+                }
+            }
+        }
+
+        looped = queue.size() < existing;
+        stale = false;
+        queue.clear();
+    }
+
+    /**
+     * Start tracking a new person, they have no parents yet
+     */
+    public void add(int id) {
+        if(id >= levels.length) {
+            levels = Arrays.copyOf(levels, Math.max(id + 1, levels.length * 2));
+        }
+
+        levels[id] = 0;
+    }
+
+    /**
+     * Give the child whose dad or mom changed and the descendants that move with them their new
+     * generation
+     */
+    public void parentChanged(int child) {
+        if(stale) {
+            return;
+        }
+
+        if(looped) {
+            stale = true;
+            return;
+        }
+
+        queue.clear();
+        queue.add(child);
+
+        for(int head = 0; head < queue.size(); head++) {
+            int person = queue.get(head);
+            int level = levelFromParents(person);
+
+            if(level == levels[person]) {
+                continue;
+            }
+
+            // Also ends a change that made someone their own ancestor
+            if(head >= MAX_MOVED) {
+                stale = true;
+                break;
+            }
+
+            levels[person] = level;
+            IntList children = childrenIndex.getChildrenOf(person);
+
+            for(int i = 0; i < children.size(); i++) {
+                queue.add(children.get(i));
+            }
+        }
+
+        queue.clear();
+    }
+
+    /**
+     * Get the generation a person's parents give them
+     */
+    private int levelFromParents(int id) {
+        int level = 0;
+
+        if(store.getDad(id) != PersonStore.NONE) {
+            level = levels[store.getDad(id)] + 1;
+        }
+
+        if(store.getMom(id) != PersonStore.NONE) {
+            level = Math.max(level, levels[store.getMom(id)] + 1);
+        }
+
+        return level;
+    }
+
+    /**
+     * Get the generation of a person, 0 for the people without parents. The generations are given
+     * again first if a change left them behind, so only one thread asks at a time
+     */
+    public synchronized int getLevel(int id) {
+        if(stale) {
+            relevelAll();
+        }
+
+        return levels[id];
+    }
+}
@@ -1,191 +1,233 @@
 package it2051229.genealogy.entities;
 
 import java.util.ArrayList;
-
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A graph is never changed once built, so any number of threads may search it at the same time
+ */
 public class Graph {
-    private ArrayList<Node> nodes;
-
     /**
-     * Create a graph for searching
+     * Relationship codes stored for each edge
      */
-    public Graph() {
-        nodes = new ArrayList<>();
-    }
+    public static final byte DAD = 0;
+    public static final byte MOM = 1;
+    public static final byte SPOUSE = 2;
+    public static final byte CHILD = 3;
+
+    private static final String[] RELATIONSHIPS = { "Dad", "Mom", "Spouse", "Child" };
+
+    private final String[] names;
+    private final HashMap<String, Integer> ids;
+
+    // Edges going out of node i are stored from offsets[i] until offsets[i + 1]
+    final int[] offsets;
+    final int[] targets;
+    final byte[] relationships;
+
+    // Edges coming into node i are stored from inOffsets[i] until inOffsets[i + 1]
+    final int[] inOffsets;
+    final int[] sources;
+    final byte[] inRelationships;
+
+    // Search buffers that are not in use by any query
+    private final ConcurrentLinkedQueue<PathFinder> pathFinders;
 
     /**
-     * Set all nodes back to default
+     * Create a graph for searching out of compressed rows of edges
      */
-    private void resetNodes() {
-        for(Node node : nodes) {
-            node.cost = Integer.MAX_VALUE;
-            node.previous = null;
+    Graph(String[] names, int[] offsets, int[] targets, byte[] relationships) {
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.relationships = relationships;
+
+        ids = new HashMap<>(names.length * 2);
+
+        // Ids of removed people have no name
+        for(int i = 0; i < names.length; i++) {
+            if(names[i] != null) {
+                ids.put(names[i], i);
+            }
+        }
+
+        // Lay out the same edges by their target so searches can also walk backwards
+        inOffsets = new int[names.length + 1];
+        sources = new int[targets.length];
+        inRelationships = new byte[targets.length];
+
+        for(int target : targets) {
+            inOffsets[target + 1]++;
+        }
+
+        for(int i = 0; i < names.length; i++) {
+            inOffsets[i + 1] += inOffsets[i];
         }
+
+        int[] position = new int[names.length];
+        System.arraycopy(inOffsets, 0, position, 0, names.length);
+
+        for(int node = 0; node < names.length; node++) {
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int inEdge = position[targets[edge]]++;
+                sources[inEdge] = node;
+                inRelationships[inEdge] = relationships[edge];
+            }
+        }
+
+        pathFinders = new ConcurrentLinkedQueue<>();
     }
 
     /**
-     * Find the node of a name
+     * Get the relationship name of a relationship code
      */
-    private Node find(String name) {
-        for(Node node : nodes) {
-            if(node.name.equals(name)) {
-                return node;
-            }
-        }
+    public static String getRelationshipName(byte relationship) {
+        return RELATIONSHIPS[relationship];
+    }
 
-        return null;
+    /**
+     * Number of names in the graph
+     */
+    public int size() {
+        return names.length;
     }
 
     /**
-     * Add a new node
+     * Get the name of an id
      */
-    public void add(String name) {
-        nodes.add(new Node(name));
+    public String getName(int id) {
+        return names[id];
     }
 
     /**
-     * Make a connection between 2 nodes
+     * Find the id of a name, -1 if not found
      */
-    public void connect(String fromName, String toName, String relationship) {
-        Node from = find(fromName);
-        Node to = find(toName);
+    public int find(String name) {
+        Integer id = ids.get(name);
 
-        from.outBounds.add(new Edge(to, relationship));
+        if(id == null) {
+            return -1;
+        }
+
+        return id;
     }
 
     /**
      * Get the shortest path going from one person to another
      */
     public String getShortestPath(String fromName, String toName) {
-        resetNodes();
-
-        Node source = find(fromName);
-        Node destination = find(toName);
+        int source = find(fromName);
+        int destination = find(toName);
 
-        if (source == null || destination == null) {
+        if(source == -1 || destination == -1) {
             return "";
         }
 
-        // Create a new List copying the old list
-        PriorityQueue unvisitedNodes = new PriorityQueue();
+        PathFinder pathFinder = acquirePathFinder();
 
-        for(Node node : nodes) {
-            unvisitedNodes.enqueue(node);
+        try {
+            return pathFinder.getShortestPath(source, destination);
+        } finally {
+            releasePathFinder(pathFinder);
         }
+    }
 
-        // Set the starting node as zero
-        // Set distance infinite for the rest, and this is done by default once the reset is called
-        source.cost = 0;
-
-        // While list is not empty
-        while (unvisitedNodes.priorityNodes.contains(destination)) {
-            Node lowestCostNode = unvisitedNodes.dequeue();
-
-            // If the lowest cost is infinity, then all remaining vertices is inaccessible
-            if (lowestCostNode.cost == Integer.MAX_VALUE) {
-                break;
-            }
+    /**
+     * Get the shortest paths of many pairs of names, each pair holds the from and to names.
+     * The pairs are spread across all the processors
+     */
+    public List<String> getShortestPaths(List<String[]> pairs) throws InterruptedException {
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), pairs.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            return getShortestPaths(pairs, executor, threads);
+        } finally {
+            executor.shutdown();
+        }
+    }
 
-            // Calculate the distance from the chosen node to adjacent ones that haven't
-            // yet been removed from the graph
-            for (int i = 0; i < lowestCostNode.outBounds.size(); i++) {
-                Edge adjacentEdge = lowestCostNode.outBounds.get(i);
-                int adjacentCost = lowestCostNode.cost + adjacentEdge.weight;
-
-                // Replace the neighbor with better cost
-                if (adjacentCost < adjacentEdge.node.cost) {
-                    adjacentEdge.node.cost = adjacentCost;
-                    adjacentEdge.node.previous = lowestCostNode;
-                    adjacentEdge.node.relationshipWithPrevious = adjacentEdge.relationship;
+    /**
+     * Get the shortest paths of many pairs of names using the given workers, the pairs are split
+     * into the given number of chunks
+     */
+    public List<String> getShortestPaths(final List<String[]> pairs, ExecutorService executor, int chunks) throws InterruptedException {
+        final String[] results = new String[pairs.size()];
+        int chunkSize = (pairs.size() + Math.max(1, chunks) - 1) / Math.max(1, chunks);
+
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+
+        for(int start = 0; start < pairs.size(); start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(pairs.size(), start + chunkSize);
+
+            tasks.add(new Callable<Void>() {
+                // Each chunk holds on to one set of buffers until it is done
+                @Override
+                public Void call() {
+                    PathFinder pathFinder = acquirePathFinder();
+
+                    try {
+                        for(int i = from; i < to; i++) {
+                            int source = find(pairs.get(i)[0]);
+                            int destination = find(pairs.get(i)[1]);
+
+                            if(source == -1 || destination == -1) {
+                                results[i] = "";
+                            } else {
+                                results[i] = pathFinder.getShortestPath(source, destination);
+                            }
+                        }
+                    } finally {
+                        releasePathFinder(pathFinder);
+                    }
+
+                    return null;
                 }
-            }
+            });
         }
 
-        // Define the path
-        Node currentNode = destination;
+        for(Future<Void> future : executor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch(ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
 
-        String result = "";
+        ArrayList<String> paths = new ArrayList<>(results.length);
 
-        while (currentNode.previous != null) {
-            result += currentNode.name + " (" + currentNode.relationshipWithPrevious + " of) " + currentNode.previous.name + "\n";
-            currentNode = currentNode.previous;
+        for(String result : results) {
+            paths.add(result);
         }
 
-        return result;
+        return paths;
     }
 
     /**
-     * Node is used to make connections to other nodes
+     * Take unused search buffers or create new ones if all are in use
      */
-    private class Node {
-        public String name;
-        public int cost;
-
-        public Node previous;
-        public String relationshipWithPrevious;
-
-        public ArrayList<Edge> outBounds;
-
-        /**
-         * Create a node
-         */
-        public Node(String name) {
-            this.name = name;
-            outBounds = new ArrayList<>();
-            cost = Integer.MAX_VALUE;
-            relationshipWithPrevious = "";
-        }
-    }
+    private PathFinder acquirePathFinder() {
+        PathFinder pathFinder = pathFinders.poll();
 
-    /**
-     * Connects 2 edges together
-     */
-    private class Edge {
-        public Node node;
-        public int weight;
-        public String relationship;
-
-        public Edge(Node node, String relationship) {
-            this.node = node;
-            this.relationship = relationship;
-            weight = 1;
+        if(pathFinder == null) {
+            pathFinder = new PathFinder(this);
         }
+
+        return pathFinder;
     }
 
     /**
-     * Self made priority queue
+     * Give back the search buffers so the next query can reuse them
      */
-    private class PriorityQueue {
-
-        private ArrayList<Node> priorityNodes;
-
-        /**
-         * Initialize the queue
-         */
-        public PriorityQueue() {
-            priorityNodes = new ArrayList<Node>();
-        }
-
-        /**
-         * Enqueue a node
-         */
-        public void enqueue(Node node) {
-            priorityNodes.add(node);
-        }
-
-        /**
-         * Get the next prioritized queue
-         */
-        public Node dequeue() {
-            int lowestCostIndex = 0;
-
-            for (int i = 1; i < priorityNodes.size(); i++) {
-                if (priorityNodes.get(i).cost < priorityNodes.get(lowestCostIndex).cost) {
-                    lowestCostIndex = i;
-                }
-            }
-
-            // Remove the lowest cost node from the unvisited nodes to be marked as visited
-            return priorityNodes.remove(lowestCostIndex);
-        }
+    private void releasePathFinder(PathFinder pathFinder) {
+        pathFinders.offer(pathFinder);
     }
 }
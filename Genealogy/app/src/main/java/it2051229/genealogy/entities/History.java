@@ -0,0 +1,113 @@
+package it2051229.genealogy.entities;
+
+import java.util.ArrayList;
+
+/**
+ * The edits of the genealogy that can be undone and redone. Every change is kept as the change
+ * that reverts it, and the changes of one edit are reverted together in the reverse order. While
+ * an edit is undone the changes reverting the undo are kept, which is what redoes it. Only the
+ * changes are kept, so the history costs nothing until something is edited.
+ */
+class History {
+    /**
+     * Number of edits that can be undone, older ones are forgotten
+     */
+    public static final int MAX_EDITS = 100;
+
+    private ArrayList<ArrayList<Change>> undoEdits = new ArrayList<>();
+    private ArrayList<ArrayList<Change>> redoEdits = new ArrayList<>();
+    private ArrayList<Change> openEdit = new ArrayList<>();
+
+    // Set while an edit is undone or redone, the changes made then are kept as the opposite edit
+    private boolean reverting;
+
+    /**
+     * Keep the change reverting a change just made
+     */
+    public void record(Change change) {
+        if(!reverting && !redoEdits.isEmpty()) {
+            // A new edit makes the undone ones meaningless
+            redoEdits.clear();
+        }
+
+        openEdit.add(change);
+    }
+
+    /**
+     * Close the edit going on so it is undone as one
+     */
+    public void endEdit() {
+        if(openEdit.isEmpty()) {
+            return;
+        }
+
+        undoEdits.add(openEdit);
+        openEdit = new ArrayList<>();
+
+        if(undoEdits.size() > MAX_EDITS) {
+            undoEdits.remove(0);
+        }
+    }
+
+    /**
+     * Check if there is an edit to undo
+     */
+    public boolean canUndo() {
+        return !openEdit.isEmpty() || !undoEdits.isEmpty();
+    }
+
+    /**
+     * Check if there is an undone edit to redo
+     */
+    public boolean canRedo() {
+        return !redoEdits.isEmpty();
+    }
+
+    /**
+     * Revert the last edit, false if there is none
+     */
+    public boolean undo(Genealogy genealogy) {
+        endEdit();
+
+        if(undoEdits.isEmpty()) {
+            return false;
+        }
+
+        redoEdits.add(revert(genealogy, undoEdits.remove(undoEdits.size() - 1)));
+        return true;
+    }
+
+    /**
+     * Make the last undone edit again, false if there is none
+     */
+    public boolean redo(Genealogy genealogy) {
+        endEdit();
+
+        if(redoEdits.isEmpty()) {
+            return false;
+        }
+
+        undoEdits.add(revert(genealogy, redoEdits.remove(redoEdits.size() - 1)));
+        return true;
+    }
+
+    /**
+     * Make the reverting changes of an edit, newest first, and get the changes reverting them
+     */
+    private ArrayList<Change> revert(Genealogy genealogy, ArrayList<Change> edit) {
+        reverting = true;
+
+        try {
+            for(int i = edit.size() - 1; i >= 0; i--) {
+                genealogy.apply(edit.get(i));
+            }
+        } finally {
+            reverting = false;
+        }
+
+        ArrayList<Change> reverted = openEdit;
+        openEdit = new ArrayList<>();
+
+        return reverted;
+    }
+}
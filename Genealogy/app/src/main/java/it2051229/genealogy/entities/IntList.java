@@ -0,0 +1,123 @@
+package it2051229.genealogy.entities;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ints that avoids boxing every value
+ */
+class IntList {
+    private int[] values;
+    private int size;
+
+    /**
+     * Create an empty list
+     */
+    public IntList() {
+        values = new int[4];
+    }
+
+    /**
+     * Number of values in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Access a value
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Append a value at the end
+     */
+    public void add(int value) {
+        if(size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        values[size++] = value;
+    }
+
+    /**
+     * Remove the last value and get it
+     */
+    public int removeLast() {
+        return values[--size];
+    }
+
+    /**
+     * Find the first index of a value, -1 if it isn't there
+     */
+    public int indexOf(int value) {
+        for(int i = 0; i < size; i++) {
+            if(values[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Remove the first occurrence of a value keeping the order of the rest, returns false if it isn't there
+     */
+    public boolean remove(int value) {
+        int index = indexOf(value);
+
+        if(index < 0) {
+            return false;
+        }
+
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Insert a value keeping the list sorted, nothing happens if the value is already there
+     */
+    public void addSorted(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+
+        if(index >= 0) {
+            return;
+        }
+
+        index = -index - 1;
+
+        if(size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * Remove a value from a sorted list, returns false if it isn't there
+     */
+    public boolean removeSorted(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+
+        if(index < 0) {
+            return false;
+        }
+
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Remove all values
+     */
+    public void clear() {
+        size = 0;
+    }
+}
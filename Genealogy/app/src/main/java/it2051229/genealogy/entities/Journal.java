@@ -0,0 +1,229 @@
+package it2051229.genealogy.entities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append only file of the changes made to the genealogy since its last full save. Every record
+ * is a length, the change and a checksum, so a record cut short by a crash is found and dropped.
+ */
+class Journal {
+    // "GNLJ"
+    private static final int MAGIC = 0x474E4C4A;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private File file;
+
+    /**
+     * Create a journal kept in the file
+     */
+    public Journal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Check if there is anything in the journal
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Size of the journal in bytes
+     */
+    public long length() {
+        return file.length();
+    }
+
+    /**
+     * Append the changes and make sure they are on the disk
+     */
+    public void append(List<Change> changes) throws IOException {
+        if(changes.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+
+        if(file.length() == 0) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+        }
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream recordData = new DataOutputStream(record);
+        CRC32 crc = new CRC32();
+
+        for(Change change : changes) {
+            record.reset();
+            recordData.writeLong(change.getSequence());
+            recordData.writeByte(change.getType());
+            writeString(recordData, change.getName());
+            writeString(recordData, change.getValue());
+
+            crc.reset();
+            crc.update(record.toByteArray());
+
+            data.writeInt(record.size());
+            record.writeTo(data);
+            data.writeInt((int)crc.getValue());
+        }
+
+        FileOutputStream out = new FileOutputStream(file, true);
+
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            // Only the content is forced, which is cheaper than forcing the file's details too
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Make the changes of the journal the genealogy doesn't have yet. A record damaged by a crash
+     * ends the journal and is cut off so new records don't follow it
+     */
+    public void replay(Genealogy genealogy) throws IOException {
+        if(!file.exists()) {
+            return;
+        }
+
+        ByteBuffer data = readFully(file);
+        int end = 0;
+
+        // A journal created right before a crash may not even have its header
+        if(data.remaining() < HEADER_SIZE) {
+            data.position(data.limit());
+        } else if(data.getInt() != MAGIC || data.getInt() > VERSION) {
+            throw new IOException("Not a genealogy journal");
+        } else {
+            end = data.position();
+        }
+
+        CRC32 crc = new CRC32();
+
+        try {
+            while(data.remaining() >= 4) {
+                int length = data.getInt();
+
+                if(length < 0 || length + 4 > data.remaining()) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(data.array(), data.position(), length);
+
+                if(data.getInt(data.position() + length) != (int)crc.getValue()) {
+                    break;
+                }
+
+                long sequence = data.getLong();
+                byte type = data.get();
+                String name = readString(data);
+                String value = readString(data);
+
+                data.getInt();
+                end = data.position();
+
+                // Changes up to the count were already in the full save
+                if(sequence > genealogy.getChangeCount()) {
+                    genealogy.applyChange(new Change(sequence, type, name, value));
+                }
+            }
+        } catch(BufferUnderflowException e) {
+            // A record that passed its checksum but can't be read is treated as damaged
+        }
+
+        if(end < data.limit()) {
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+
+            try {
+                out.setLength(end);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Drop everything, after a full save having every change was written
+     */
+    public void clear() {
+        file.delete();
+    }
+
+    /**
+     * Read the whole file
+     */
+    private static ByteBuffer readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer data = ByteBuffer.allocate((int)channel.size());
+
+            while(data.hasRemaining() && channel.read(data) >= 0) {
+                // Keep reading until the whole file is in
+            }
+
+            data.flip();
+
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write a String that may be null
+     */
+    private static void writeString(DataOutputStream data, String text) throws IOException {
+        if(text == null) {
+            data.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = text.getBytes("UTF-8");
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Read a String written by writeString
+     */
+    private static String readString(ByteBuffer data) throws IOException {
+        int length = data.getInt();
+
+        if(length == -1) {
+            return null;
+        }
+
+        if(length < 0 || length > data.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        String text = new String(data.array(), data.position(), length, "UTF-8");
+        data.position(data.position() + length);
+
+        return text;
+    }
+}
@@ -0,0 +1,97 @@
+package it2051229.genealogy.entities;
+
+/**
+ * One JSON object per line and per person, with the name, spouse, dad, mom and notes. Missing
+ * relatives are null, so every line can be read on its own by other tools.
+ */
+public class JsonLinesExportCodec extends ExportCodec {
+    public static final String FILE_NAME = "Exported Names.jsonl";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Reused to build names before they are escaped
+    private StringBuilder name = new StringBuilder();
+
+    /**
+     * Name of the file the export is written to
+     */
+    @Override
+    public String getFileName() {
+        return FILE_NAME;
+    }
+
+    /**
+     * Append the line of a person
+     */
+    @Override
+    void writePerson(PersonStore store, int id, int pass, StringBuilder out) {
+        out.append("{\"name\":");
+        appendNameOf(store, id, out);
+        out.append(",\"spouse\":");
+        appendNameOf(store, store.getSpouse(id), out);
+        out.append(",\"dad\":");
+        appendNameOf(store, store.getDad(id), out);
+        out.append(",\"mom\":");
+        appendNameOf(store, store.getMom(id), out);
+        out.append(",\"notes\":");
+        appendString(store.getNotes(id), out);
+        out.append("}\n");
+    }
+
+    /**
+     * Append the name of a person as a JSON string, null for no one
+     */
+    private void appendNameOf(PersonStore store, int id, StringBuilder out) {
+        if(id == PersonStore.NONE) {
+            out.append("null");
+            return;
+        }
+
+        name.setLength(0);
+        store.appendName(id, name);
+        appendString(name, out);
+    }
+
+    /**
+     * Append the text as a quoted JSON string, escaping what JSON requires
+     */
+    private static void appendString(CharSequence text, StringBuilder out) {
+        out.append('"');
+
+        for(int i = 0; i < text.length(); i++) {
+            char letter = text.charAt(i);
+
+            switch(letter) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+
+                case '\\':
+                    out.append("\\\\");
+                    break;
+
+                case '\n':
+                    out.append("\\n");
+                    break;
+
+                case '\r':
+                    out.append("\\r");
+                    break;
+
+                case '\t':
+                    out.append("\\t");
+                    break;
+
+                default:
+                    if(letter < 0x20) {
+                        out.append("\\u00").append(HEX_DIGITS[letter >> 4]).append(HEX_DIGITS[letter & 0xF]);
+                    } else {
+                        out.append(letter);
+                    }
+                    break;
+            }
+        }
+
+        out.append('"');
+    }
+}
@@ -0,0 +1,147 @@
+package it2051229.genealogy.entities;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * How one person is related by blood to another, from the most recent ancestors they have in
+ * common and how many generations each of them is below the closest of those ancestors
+ */
+public class Kinship {
+    private static final String[] ORDINALS = { "first", "second", "third", "fourth", "fifth", "sixth", "seventh", "eighth", "ninth", "tenth" };
+
+    private List<String> commonAncestors;
+    private int firstGenerations;
+    private int secondGenerations;
+    private boolean half;
+
+    /**
+     * Create the kinship of two people with the generations between each of them and their
+     * closest common ancestor, -1 if they have no common ancestor
+     */
+    Kinship(String[] commonAncestors, int firstGenerations, int secondGenerations, boolean half) {
+        this.commonAncestors = Arrays.asList(commonAncestors);
+        this.firstGenerations = firstGenerations;
+        this.secondGenerations = secondGenerations;
+        this.half = half;
+    }
+
+    /**
+     * Check if the people have a common ancestor
+     */
+    public boolean isRelated() {
+        return !commonAncestors.isEmpty();
+    }
+
+    /**
+     * Access the names of the most recent common ancestors, none of them is an ancestor of another.
+     * One of the people is in there if they are the other's ancestor
+     */
+    public List<String> getCommonAncestors() {
+        return commonAncestors;
+    }
+
+    /**
+     * Number of generations from the first person up to the closest common ancestor
+     */
+    public int getFirstGenerations() {
+        return firstGenerations;
+    }
+
+    /**
+     * Number of generations from the second person up to the closest common ancestor
+     */
+    public int getSecondGenerations() {
+        return secondGenerations;
+    }
+
+    /**
+     * Check if the people only share one parent of the line they come from, the children of the
+     * closest common ancestor they descend from have different recorded other parents
+     */
+    public boolean isHalf() {
+        return half;
+    }
+
+    /**
+     * Get the name of what the second person is to the first one, like second cousin once removed
+     */
+    public String getName() {
+        if(!isRelated()) {
+            return "Not related by blood";
+        }
+
+        int up = firstGenerations;
+        int down = secondGenerations;
+        String name;
+
+        if(up == 0 && down == 0) {
+            name = "self";
+        } else if(up == 0) {
+            name = down == 1 ? "child" : greats(down - 2) + "grandchild";
+        } else if(down == 0) {
+            name = up == 1 ? "parent" : greats(up - 2) + "grandparent";
+        } else if(up == 1 && down == 1) {
+            name = (half ? "half-" : "") + "sibling";
+        } else if(up == 1) {
+            String prefix = (half ? "half-" : "") + (down == 2 ? "" : greats(down - 3) + "grand");
+            name = prefix + "niece or " + prefix + "nephew";
+        } else if(down == 1) {
+            String prefix = (half ? "half-" : "") + (up == 2 ? "" : greats(up - 3) + "grand");
+            name = prefix + "aunt or " + prefix + "uncle";
+        } else {
+            int removed = Math.abs(up - down);
+            name = (half ? "half " : "") + ordinal(Math.min(up, down) - 1) + " cousin";
+
+            if(removed == 1) {
+                name += " once removed";
+            } else if(removed == 2) {
+                name += " twice removed";
+            } else if(removed > 2) {
+                name += " " + removed + " times removed";
+            }
+        }
+
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * Get the words for a number of greats before a relationship
+     */
+    private static String greats(int count) {
+        StringBuilder result = new StringBuilder();
+
+        for(int i = 0; i < count; i++) {
+            result.append("great-");
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Get the word for the degree of a cousin
+     */
+    private static String ordinal(int degree) {
+        if(degree <= ORDINALS.length) {
+            return ORDINALS[degree - 1];
+        }
+
+        if(degree % 100 >= 11 && degree % 100 <= 13) {
+            return degree + "th";
+        }
+
+        switch(degree % 10) {
+            case 1:
+                return degree + "st";
+
+            case 2:
+                return degree + "nd";
+
+            case 3:
+                return degree + "rd";
+
+            default:
+                return degree + "th";
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package it2051229.genealogy.entities;
+
+/**
+ * Finds the most recent common ancestors of two people. The ancestors of both are taken from the
+ * highest generation level down, so the closest distance to an ancestor is known by the time it is
+ * taken. An ancestor reached from both sides is a common one, and everything above it is marked as
+ * covered since it can't be a most recent one. The search stops as soon as only covered ancestors
+ * are left, so it goes no further up than the common ancestors. The buffers are reused between
+ * searches so a kinship finder must only be used by one thread at a time, the index keeps a pool
+ * of them for concurrent queries.
+ */
+public class KinshipFinder {
+    private static final byte FIRST = 1;
+    private static final byte SECOND = 2;
+    private static final byte BOTH = FIRST | SECOND;
+    private static final byte COVERED = 4;
+    private static final byte TAKEN = 8;
+
+    private KinshipIndex index;
+
+    // A node is seen if its stamp equals the stamp of the current search
+    private int stamp;
+    private int[] stamps;
+    private byte[] sides;
+    private int[] firstDistances;
+    private int[] secondDistances;
+
+    // The child each side came up through on its closest way to an ancestor
+    private int[] firstChildren;
+    private int[] secondChildren;
+
+    // The ancestors seen but not taken yet, the highest level on top
+    private int[] heap;
+    private int heapSize;
+
+    // Number of ancestors in the heap that aren't covered, the search ends when none are left
+    private int uncovered;
+
+    private IntList commonAncestors = new IntList();
+
+    /**
+     * Create the buffers needed to search the index
+     */
+    public KinshipFinder(KinshipIndex index) {
+        this.index = index;
+
+        int size = index.size();
+
+        stamps = new int[size];
+        sides = new byte[size];
+        firstDistances = new int[size];
+        secondDistances = new int[size];
+        firstChildren = new int[size];
+        secondChildren = new int[size];
+        heap = new int[size];
+    }
+
+    /**
+     * Work out what the second person is to the first one
+     */
+    public Kinship getKinship(int first, int second) {
+        if(first == second) {
+            return new Kinship(new String[] { index.getName(first) }, 0, 0, false);
+        }
+
+        search(first, second);
+
+        if(commonAncestors.size() == 0) {
+            return new Kinship(new String[0], -1, -1, false);
+        }
+
+        // The closest common ancestor names the relationship
+        int closest = commonAncestors.get(0);
+
+        for(int i = 1; i < commonAncestors.size(); i++) {
+            int ancestor = commonAncestors.get(i);
+
+            if(firstDistances[ancestor] + secondDistances[ancestor] < firstDistances[closest] + secondDistances[closest]) {
+                closest = ancestor;
+            }
+        }
+
+        // The children of the ancestor on each side having different other parents share half of
+        // the ancestry, a missing other parent tells nothing
+        boolean half = false;
+
+        if(firstDistances[closest] > 0 && secondDistances[closest] > 0) {
+            int firstOtherParent = otherParent(firstChildren[closest], closest);
+            int secondOtherParent = otherParent(secondChildren[closest], closest);
+
+            half = firstOtherParent != PersonStore.NONE && secondOtherParent != PersonStore.NONE && firstOtherParent != secondOtherParent;
+        }
+
+        String[] names = new String[commonAncestors.size()];
+
+        for(int i = 0; i < names.length; i++) {
+            names[i] = index.getName(commonAncestors.get(i));
+        }
+
+        return new Kinship(names, firstDistances[closest], secondDistances[closest], half);
+    }
+
+    /**
+     * Get the parent of a child who isn't the given parent, nothing if unknown
+     */
+    private int otherParent(int child, int parent) {
+        return index.dads[child] == parent ? index.moms[child] : index.dads[child];
+    }
+
+    /**
+     * Go up from both people and gather their most recent common ancestors
+     */
+    private void search(int first, int second) {
+        nextStamp();
+        heapSize = 0;
+        uncovered = 0;
+        commonAncestors.clear();
+
+        reach(first, PersonStore.NONE, FIRST, 0, 0);
+        reach(second, PersonStore.NONE, SECOND, 0, 0);
+
+        while(heapSize > 0 && uncovered > 0) {
+            int node = pop();
+            byte flags = sides[node];
+            sides[node] |= TAKEN;
+
+            byte parentFlags;
+
+            if((flags & COVERED) != 0) {
+                parentFlags = COVERED;
+            } else {
+                uncovered--;
+
+                if((flags & BOTH) == BOTH) {
+                    commonAncestors.add(node);
+                    parentFlags = COVERED;
+                } else {
+                    parentFlags = (byte)(flags & BOTH);
+                }
+            }
+
+            int dad = index.dads[node];
+            int mom = index.moms[node];
+
+            if(dad != PersonStore.NONE) {
+                reach(dad, node, parentFlags, firstDistances[node] + 1, secondDistances[node] + 1);
+            }
+
+            if(mom != PersonStore.NONE && mom != dad) {
+                reach(mom, node, parentFlags, firstDistances[node] + 1, secondDistances[node] + 1);
+            }
+        }
+    }
+
+    /**
+     * Pass the sides of a child on to a parent and keep the closest distances to it and the children
+     * they go through
+     */
+    private void reach(int node, int child, byte flags, int firstDistance, int secondDistance) {
+        if(stamps[node] != stamp) {
+            stamps[node] = stamp;
+            sides[node] = 0;
+            firstDistances[node] = Integer.MAX_VALUE;
+            secondDistances[node] = Integer.MAX_VALUE;
+            push(node);
+            uncovered++;
+        } else if((sides[node] & TAKEN) != 0) {
+            // Only someone who is their own ancestor is reached again once taken
+            return;
+        }
+
+        if((flags & COVERED) != 0 && (sides[node] & COVERED) == 0) {
+            uncovered--;
+        }
+
+        sides[node] |= flags;
+
+        if((flags & FIRST) != 0 && firstDistance < firstDistances[node]) {
+            firstDistances[node] = firstDistance;
+            firstChildren[node] = child;
+        }
+
+        if((flags & SECOND) != 0 && secondDistance < secondDistances[node]) {
+            secondDistances[node] = secondDistance;
+            secondChildren[node] = child;
+        }
+    }
+
+    /**
+     * Add a node to the heap
+     */
+    private void push(int node) {
+        int i = heapSize++;
+
+        while(i > 0) {
+            int parent = (i - 1) / 2;
+
+            if(index.levels[heap[parent]] >= index.levels[node]) {
+                break;
+            }
+
+            heap[i] = heap[parent];
+            i = parent;
+        }
+
+        heap[i] = node;
+    }
+
+    /**
+     * Take the node with the highest level out of the heap
+     */
+    private int pop() {
+        int top = heap[0];
+        int node = heap[--heapSize];
+        int i = 0;
+
+        while(true) {
+            int child = i * 2 + 1;
+
+            if(child >= heapSize) {
+                break;
+            }
+
+            if(child + 1 < heapSize && index.levels[heap[child + 1]] > index.levels[heap[child]]) {
+                child++;
+            }
+
+            if(index.levels[heap[child]] <= index.levels[node]) {
+                break;
+            }
+
+            heap[i] = heap[child];
+            i = child;
+        }
+
+        heap[i] = node;
+        return top;
+    }
+
+    /**
+     * Move to a new search, the stamps are only cleared when the counter runs out
+     */
+    private void nextStamp() {
+        stamp++;
+
+        if(stamp == Integer.MAX_VALUE) {
+            for(int i = 0; i < stamps.length; i++) {
+                stamps[i] = 0;
+            }
+
+            stamp = 1;
+        }
+    }
+}
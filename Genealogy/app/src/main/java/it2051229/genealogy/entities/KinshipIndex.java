@@ -0,0 +1,183 @@
+package it2051229.genealogy.entities;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The dads and moms of everyone laid out for working out how two people are related. Every person
+ * is given a generation level above all of their parents, so a search going up from two people can
+ * take the ancestors from the youngest to the oldest and knows every path to an ancestor was seen
+ * before the ancestor is. Like a graph the index is never changed once built, so any number of
+ * threads may query it at the same time.
+ */
+public class KinshipIndex {
+    private final String[] names;
+    private final HashMap<String, Integer> ids;
+
+    final int[] dads;
+    final int[] moms;
+
+    // Zero for people without parents, above the levels of both parents for everyone else
+    final int[] levels;
+
+    // Search buffers that are not in use by any query
+    private final ConcurrentLinkedQueue<KinshipFinder> kinshipFinders;
+
+    /**
+     * Create an index out of the relatives of every id, removed people have no name
+     */
+    KinshipIndex(String[] names, int[] dads, int[] moms) {
+        this.names = names;
+        this.dads = dads;
+        this.moms = moms;
+
+        ids = new HashMap<>(names.length * 2);
+
+        for(int i = 0; i < names.length; i++) {
+            if(names[i] != null) {
+                ids.put(names[i], i);
+            }
+        }
+
+        levels = computeLevels();
+        kinshipFinders = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Give everyone a level one above their highest parent, going down from the people without
+     * parents. People who are their own ancestor never get there and are put below everyone
+     */
+    private int[] computeLevels() {
+        int size = names.length;
+        int[] levels = new int[size];
+
+        // Lay out the children of every parent one after the other
+        int[] offsets = new int[size + 1];
+        int[] pendingParents = new int[size];
+
+        for(int id = 0; id < size; id++) {
+            if(dads[id] != PersonStore.NONE) {
+                offsets[dads[id] + 1]++;
+                pendingParents[id]++;
+            }
+
+            if(moms[id] != PersonStore.NONE && moms[id] != dads[id]) {
+                offsets[moms[id] + 1]++;
+                pendingParents[id]++;
+            }
+        }
+
+        for(int i = 0; i < size; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] children = new int[offsets[size]];
+        int[] position = new int[size];
+        System.arraycopy(offsets, 0, position, 0, size);
+
+        for(int id = 0; id < size; id++) {
+            if(dads[id] != PersonStore.NONE) {
+                children[position[dads[id]]++] = id;
+            }
+
+            if(moms[id] != PersonStore.NONE && moms[id] != dads[id]) {
+                children[position[moms[id]]++] = id;
+            }
+        }
+
+        // A child is leveled once all of its parents are
+        int[] queue = new int[size];
+        int tail = 0;
+
+        for(int id = 0; id < size; id++) {
+            levels[id] = -1;
+
+            if(pendingParents[id] == 0) {
+                levels[id] = 0;
+                queue[tail++] = id;
+            }
+        }
+
+        for(int head = 0; head < tail; head++) {
+            int parent = queue[head];
+
+            for(int i = offsets[parent]; i < offsets[parent + 1]; i++) {
+                int child = children[i];
+                levels[child] = Math.max(levels[child], levels[parent] + 1);
+
+                if(--pendingParents[child] == 0) {
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        return levels;
+    }
+
+    /**
+     * Number of ids in the index
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Get the name of an id
+     */
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Find the id of a name, -1 if not found
+     */
+    public int find(String name) {
+        Integer id = ids.get(name);
+
+        if(id == null) {
+            return -1;
+        }
+
+        return id;
+    }
+
+    /**
+     * Work out what the second person is to the first one, null if either name is not found
+     */
+    public Kinship getKinship(String fromName, String toName) {
+        int from = find(fromName);
+        int to = find(toName);
+
+        if(from == -1 || to == -1) {
+            return null;
+        }
+
+        KinshipFinder kinshipFinder = acquireKinshipFinder();
+
+        try {
+            return kinshipFinder.getKinship(from, to);
+        } finally {
+            releaseKinshipFinder(kinshipFinder);
+        }
+    }
+
+    /**
+     * Take unused search buffers or create new ones if all are in use
+     */
+    private KinshipFinder acquireKinshipFinder() {
+        KinshipFinder kinshipFinder = kinshipFinders.poll();
+
+        if(kinshipFinder == null) {
+            kinshipFinder = new KinshipFinder(this);
+        }
+
+        return kinshipFinder;
+    }
+
+    /**
+     * Give back the search buffers so the next query can reuse them
+     */
+    private void releaseKinshipFinder(KinshipFinder kinshipFinder) {
+        kinshipFinders.offer(kinshipFinder);
+    }
+}
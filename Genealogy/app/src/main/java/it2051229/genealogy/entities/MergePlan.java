@@ -0,0 +1,121 @@
+package it2051229.genealogy.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What merging an imported genealogy into the current one would change. The imported people are
+ * matched to the current ones by name through the name index, one lookup each, so planning is
+ * linear in the size of the import. People who aren't there yet are added, and relatives and notes
+ * are taken from the import where the current person has none. Where both have a different one the
+ * current one is kept, as it may be an edit made since the file was written, and the difference is
+ * reported as a conflict. Nothing is ever removed, so a merge only adds to what is there.
+ */
+public class MergePlan {
+    private ArrayList<Change> changes = new ArrayList<>();
+    private ArrayList<String> conflicts = new ArrayList<>();
+    private int addedCount;
+
+    // Reused to look names up without building them
+    private StringBuilder name = new StringBuilder();
+
+    /**
+     * Compare the imported people with the current ones, the current store must not change while
+     * the plan is made
+     */
+    MergePlan(PersonStore current, NameIndex nameIndex, PersonStore imported) {
+        // The current id of every imported person, NONE for the ones to add
+        int[] currentIds = new int[imported.size()];
+
+        for(int id = 0; id < imported.size(); id++) {
+            currentIds[id] = PersonStore.NONE;
+
+            if(imported.exists(id)) {
+                name.setLength(0);
+                imported.appendName(id, name);
+                currentIds[id] = nameIndex.find(name);
+
+                if(currentIds[id] == PersonStore.NONE) {
+                    changes.add(new Change(0, Change.ADD, imported.getName(id), null));
+                    addedCount++;
+                }
+            }
+        }
+
+        // Relatives may be added people, so they are linked after everyone is added
+        for(int id = 0; id < imported.size(); id++) {
+            if(!imported.exists(id)) {
+                continue;
+            }
+
+            int currentId = currentIds[id];
+
+            compareRelative(current, imported, id, Change.DAD, "dad", currentId == PersonStore.NONE ? PersonStore.NONE : current.getDad(currentId), imported.getDad(id), currentIds);
+            compareRelative(current, imported, id, Change.MOM, "mom", currentId == PersonStore.NONE ? PersonStore.NONE : current.getMom(currentId), imported.getMom(id), currentIds);
+            compareRelative(current, imported, id, Change.SPOUSE, "spouse", currentId == PersonStore.NONE ? PersonStore.NONE : current.getSpouse(currentId), imported.getSpouse(id), currentIds);
+
+            String notes = currentId == PersonStore.NONE ? "" : current.getNotes(currentId);
+            String importedNotes = imported.getNotes(id);
+
+            if(importedNotes.isEmpty() || importedNotes.equals(notes)) {
+                continue;
+            }
+
+            if(notes.isEmpty()) {
+                changes.add(new Change(0, Change.NOTES, imported.getName(id), importedNotes));
+            } else {
+                conflicts.add(imported.getName(id) + ": the notes differ, kept the ones here");
+            }
+        }
+    }
+
+    /**
+     * Take the imported relative if the current person has none, or report a different one
+     */
+    private void compareRelative(PersonStore current, PersonStore imported, int id, byte type, String relation, int relative, int importedRelative, int[] currentIds) {
+        if(importedRelative == PersonStore.NONE) {
+            return;
+        }
+
+        if(relative == PersonStore.NONE) {
+            changes.add(new Change(0, type, imported.getName(id), imported.getName(importedRelative)));
+        } else if(relative != currentIds[importedRelative]) {
+            conflicts.add(imported.getName(id) + ": the " + relation + " is " + current.getName(relative) + " here but " + imported.getName(importedRelative) + " in the file, kept " + current.getName(relative));
+        }
+    }
+
+    /**
+     * Access the changes to make, the people to add come first
+     */
+    List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Check if the merge would change nothing
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Number of people the merge adds
+     */
+    public int getAddedCount() {
+        return addedCount;
+    }
+
+    /**
+     * Number of relatives and notes the merge fills in
+     */
+    public int getChangedCount() {
+        return changes.size() - addedCount;
+    }
+
+    /**
+     * Access a description of every difference that was left as it is
+     */
+    public List<String> getConflicts() {
+        return conflicts;
+    }
+}
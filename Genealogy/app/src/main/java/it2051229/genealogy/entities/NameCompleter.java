@@ -0,0 +1,391 @@
+package it2051229.genealogy.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Completes names from the start of any of their words, e.g. "dela" completes "Juan Dela Cruz".
+ * The words of every name are kept in a trie where each node remembers the best ranked people
+ * below it, so completing a single word only walks the typed letters. The remembered people are
+ * thrown away along the words of someone whose name or relatives changed and found again the
+ * next time they are needed.
+ */
+class NameCompleter {
+    /**
+     * Number of best ranked people remembered by every node
+     */
+    public static final int MAX_CACHED_COMPLETIONS = 16;
+
+    private PersonStore store;
+    private NameDictionary dictionary;
+    private ChildrenIndex childrenIndex;
+    private Node root;
+
+    /**
+     * Create a completer of everyone in the store, the children index is used for ranking
+     */
+    public NameCompleter(PersonStore store, ChildrenIndex childrenIndex) {
+        this.store = store;
+        this.childrenIndex = childrenIndex;
+
+        dictionary = store.getDictionary();
+        root = new Node();
+
+        for(int id = 0; id < store.size(); id++) {
+            if(store.exists(id)) {
+                add(id);
+            }
+        }
+    }
+
+    /**
+     * Start completing the person's name
+     */
+    public void add(int id) {
+        for(int i = 0; i < store.getNameLength(id); i++) {
+            String word = dictionary.get(store.getNameToken(id, i));
+            Node node = root;
+            node.count++;
+            node.top = null;
+
+            for(int j = 0; j < word.length(); j++) {
+                node = node.getOrCreateChild(word.charAt(j));
+                node.count++;
+                node.top = null;
+            }
+
+            if(node.owners == null) {
+                node.owners = new IntList();
+            }
+
+            node.owners.add(id);
+        }
+    }
+
+    /**
+     * Stop completing the person's name, done before the name in the store changes
+     */
+    public void remove(int id) {
+        for(int i = 0; i < store.getNameLength(id); i++) {
+            String word = dictionary.get(store.getNameToken(id, i));
+            Node node = root;
+            node.count--;
+            node.top = null;
+
+            for(int j = 0; j < word.length(); j++) {
+                node = node.getChild(word.charAt(j));
+                node.count--;
+                node.top = null;
+            }
+
+            node.owners.remove(id);
+        }
+    }
+
+    /**
+     * The number of relatives of the person changed, so forget the rankings it is part of
+     */
+    public void rankChanged(int id) {
+        if(!store.exists(id)) {
+            return;
+        }
+
+        for(int i = 0; i < store.getNameLength(id); i++) {
+            String word = dictionary.get(store.getNameToken(id, i));
+            Node node = root;
+            node.top = null;
+
+            for(int j = 0; j < word.length() && node != null; j++) {
+                node = node.getChild(word.charAt(j));
+
+                if(node != null) {
+                    node.top = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get up to limit names having a word starting with each word of the text. People with more
+     * relatives come first
+     */
+    public List<String> getCompletions(String text, int limit) {
+        String[] textWords = splitWords(text);
+
+        if(textWords.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        // Only the people below the word with the fewest people can match all words
+        Node smallest = null;
+        String smallestWord = null;
+
+        for(String textWord : textWords) {
+            Node node = find(textWord);
+
+            if(node == null) {
+                return Collections.emptyList();
+            }
+
+            if(smallest == null || node.count < smallest.count) {
+                smallest = node;
+                smallestWord = textWord;
+            }
+        }
+
+        ArrayList<String> names = new ArrayList<>();
+
+        // A single word is answered by the remembered ranking
+        if(textWords.length == 1 && limit <= MAX_CACHED_COMPLETIONS) {
+            int[] top = getTop(smallest);
+
+            for(int i = 0; i < top.length && i < limit; i++) {
+                names.add(store.getName(top[i]));
+            }
+
+            return names;
+        }
+
+        // Otherwise go through everyone below and keep the best in a heap where the worst is on top
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, Collections.reverseOrder(rankOrder));
+        collect(smallest, textWords, smallestWord, limit, best, new HashSet<Integer>());
+
+        Integer[] sorted = best.toArray(new Integer[best.size()]);
+        Arrays.sort(sorted, rankOrder);
+
+        for(int id : sorted) {
+            names.add(store.getName(id));
+        }
+
+        return names;
+    }
+
+    /**
+     * Find the node of the lower cased word
+     */
+    private Node find(String word) {
+        Node node = root;
+
+        for(int i = 0; i < word.length() && node != null; i++) {
+            node = node.getChild(word.charAt(i));
+        }
+
+        return node;
+    }
+
+    /**
+     * Get the best ranked people below the node, finding them again if they were forgotten
+     */
+    private int[] getTop(Node node) {
+        if(node.top != null) {
+            return node.top;
+        }
+
+        int[] top = new int[MAX_CACHED_COMPLETIONS];
+        int size = 0;
+
+        if(node.owners != null) {
+            for(int i = 0; i < node.owners.size(); i++) {
+                size = insert(top, size, node.owners.get(i));
+            }
+        }
+
+        for(int i = 0; i < node.childCount; i++) {
+            for(int id : getTop(node.children[i])) {
+                size = insert(top, size, id);
+            }
+        }
+
+        node.top = Arrays.copyOf(top, size);
+
+        return node.top;
+    }
+
+    /**
+     * Insert the person into the sorted best ranked people if it is good enough, returns the new size
+     */
+    private int insert(int[] top, int size, int id) {
+        // Skip if it can't beat the worst one
+        if(size == top.length && compareRanks(id, top[size - 1]) >= 0) {
+            return size;
+        }
+
+        // A person having 2 words with the same start is found twice
+        for(int i = 0; i < size; i++) {
+            if(top[i] == id) {
+                return size;
+            }
+        }
+
+        int index = size < top.length ? size : size - 1;
+
+        while(index > 0 && compareRanks(id, top[index - 1]) < 0) {
+            top[index] = top[index - 1];
+            index--;
+        }
+
+        top[index] = id;
+
+        return size < top.length ? size + 1 : size;
+    }
+
+    /**
+     * Go through everyone below the node having all the words of the text
+     */
+    private void collect(Node node, String[] textWords, String nodeWord, int limit, PriorityQueue<Integer> best, HashSet<Integer> seen) {
+        if(node.owners != null) {
+            for(int i = 0; i < node.owners.size(); i++) {
+                int id = node.owners.get(i);
+
+                if(seen.add(id) && hasAllWords(id, textWords, nodeWord)) {
+                    best.offer(id);
+
+                    if(best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+
+        for(int i = 0; i < node.childCount; i++) {
+            collect(node.children[i], textWords, nodeWord, limit, best, seen);
+        }
+    }
+
+    /**
+     * Check if every word of the text starts one of the words of a name, the word we came from
+     * is already known to match
+     */
+    private boolean hasAllWords(int id, String[] textWords, String skippedWord) {
+        for(String textWord : textWords) {
+            if(textWord == skippedWord) {
+                continue;
+            }
+
+            boolean found = false;
+
+            for(int i = 0; i < store.getNameLength(id); i++) {
+                if(dictionary.get(store.getNameToken(id, i)).startsWith(textWord)) {
+                    found = true;
+                    break;
+                }
+            }
+
+            if(!found) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Orders people having more relatives first then by name
+     */
+    private Comparator<Integer> rankOrder = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+            return compareRanks(a, b);
+        }
+    };
+
+    /**
+     * Compare 2 people so the one having more relatives comes first, then by name
+     */
+    private int compareRanks(int a, int b) {
+        int result = countRelatives(b) - countRelatives(a);
+        return result != 0 ? result : store.compareNames(a, b);
+    }
+
+    /**
+     * Count the links a person has to other people
+     */
+    private int countRelatives(int id) {
+        int count = childrenIndex.getChildrenOf(id).size();
+
+        if(store.getDad(id) != PersonStore.NONE) {
+            count++;
+        }
+
+        if(store.getMom(id) != PersonStore.NONE) {
+            count++;
+        }
+
+        if(store.getSpouse(id) != PersonStore.NONE) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Break the text into lower cased words
+     */
+    private static String[] splitWords(String text) {
+        text = text.trim().toLowerCase();
+
+        if(text.isEmpty()) {
+            return new String[0];
+        }
+
+        return text.split(" +");
+    }
+
+    /**
+     * A letter in the trie
+     */
+    private static class Node {
+        public char[] letters = new char[0];
+        public Node[] children = new Node[0];
+        public int childCount;
+
+        // Ids of the people having a word ending on this node
+        public IntList owners;
+
+        // Number of words passing through this node
+        public int count;
+
+        // Best ranked people below this node, null when it needs to be found again
+        public int[] top;
+
+        /**
+         * Get the child for the letter, null if there is none
+         */
+        public Node getChild(char letter) {
+            for(int i = 0; i < childCount; i++) {
+                if(letters[i] == letter) {
+                    return children[i];
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Get the child for the letter, creating it when needed
+         */
+        public Node getOrCreateChild(char letter) {
+            Node child = getChild(letter);
+
+            if(child != null) {
+                return child;
+            }
+
+            if(childCount == letters.length) {
+                letters = Arrays.copyOf(letters, childCount + 2);
+                children = Arrays.copyOf(children, childCount + 2);
+            }
+
+            child = new Node();
+            letters[childCount] = letter;
+            children[childCount++] = child;
+
+            return child;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package it2051229.genealogy.entities;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Gives every distinct word of the names an id so a name can be kept as a few ints. Words are kept
+ * lower cased, the normalized form only differs by its first letter being upper case. Words are
+ * found by lower casing the letters while hashing and comparing them, so any part of a text can be
+ * looked up as it was typed.
+ */
+class NameDictionary implements Serializable {
+    private static final int EMPTY = -1;
+
+    private ArrayList<String> tokens;
+
+    // Open addressing table of word ids and the full hash of each word, so most slots are
+    // skipped without looking at the word
+    private transient int[] slots;
+    private transient int[] slotHashes;
+
+    /**
+     * Create an empty dictionary
+     */
+    public NameDictionary() {
+        tokens = new ArrayList<>();
+        slots = createSlots(16);
+        slotHashes = new int[16];
+    }
+
+    /**
+     * Rebuild the lookup after the dictionary is passed around
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        rebuildSlots();
+    }
+
+    /**
+     * Make an independent copy of the words
+     */
+    NameDictionary copy() {
+        NameDictionary copy = new NameDictionary();
+        copy.tokens = new ArrayList<>(tokens);
+        copy.slots = slots.clone();
+        copy.slotHashes = slotHashes.clone();
+
+        return copy;
+    }
+
+    /**
+     * Lower case a letter of a name
+     */
+    public static char toLowerCase(char letter) {
+        // Most names are plain ASCII which doesn't need the character tables
+        if(letter < 128) {
+            return letter >= 'A' && letter <= 'Z' ? (char)(letter + ('a' - 'A')) : letter;
+        }
+
+        return Character.toLowerCase(letter);
+    }
+
+    /**
+     * Index of the first letter of a name, skipping what String.trim would remove
+     */
+    public static int nameStart(CharSequence name) {
+        int start = 0;
+
+        while(start < name.length() && name.charAt(start) <= ' ') {
+            start++;
+        }
+
+        return start;
+    }
+
+    /**
+     * Index after the last letter of a name, skipping what String.trim would remove
+     */
+    public static int nameEnd(CharSequence name) {
+        int end = name.length();
+
+        while(end > 0 && name.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        return end;
+    }
+
+    /**
+     * Index after the word starting at start, words of a name are separated by spaces
+     */
+    public static int wordEnd(CharSequence name, int start, int end) {
+        while(start < end && name.charAt(start) != ' ') {
+            start++;
+        }
+
+        return start;
+    }
+
+    /**
+     * Get the id of the word found between start and end of the text, adding it if it is new
+     */
+    public int add(CharSequence text, int start, int end) {
+        int id = find(text, start, end);
+
+        if(id != EMPTY) {
+            return id;
+        }
+
+        char[] letters = new char[end - start];
+
+        for(int i = start; i < end; i++) {
+            letters[i - start] = toLowerCase(text.charAt(i));
+        }
+
+        tokens.add(new String(letters));
+        id = tokens.size() - 1;
+
+        // Keep at least half of the slots empty so probing stays short
+        if(tokens.size() * 2 > slots.length) {
+            rebuildSlots();
+        } else {
+            insert(id);
+        }
+
+        return id;
+    }
+
+    /**
+     * Get the id of a word, -1 if it was never added
+     */
+    public int find(CharSequence token) {
+        return find(token, 0, token.length());
+    }
+
+    /**
+     * Get the id of the word found between start and end of the text in any case, -1 if it was
+     * never added
+     */
+    public int find(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while(slots[slot] != EMPTY) {
+            if(slotHashes[slot] == hash && matches(slots[slot], text, start, end)) {
+                return slots[slot];
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return EMPTY;
+    }
+
+    /**
+     * Check if the word between start and end of the text in any case is the word of the id
+     */
+    public boolean matches(int id, CharSequence text, int start, int end) {
+        String token = tokens.get(id);
+
+        if(token.length() != end - start) {
+            return false;
+        }
+
+        for(int i = 0; i < token.length(); i++) {
+            if(token.charAt(i) != toLowerCase(text.charAt(start + i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Access the lower cased word of an id
+     */
+    public String get(int id) {
+        return tokens.get(id);
+    }
+
+    /**
+     * Number of distinct words
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Append the normalized form of a word
+     */
+    public void appendNormalized(int id, StringBuilder builder) {
+        String token = tokens.get(id);
+
+        builder.append(Character.toUpperCase(token.charAt(0)));
+        builder.append(token, 1, token.length());
+    }
+
+    /**
+     * Put the id of a word in its slot
+     */
+    private void insert(int id) {
+        String token = tokens.get(id);
+        int hash = hash(token, 0, token.length());
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while(slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        slots[slot] = id;
+        slotHashes[slot] = hash;
+    }
+
+    /**
+     * Size the table for the words and put all of them in it
+     */
+    private void rebuildSlots() {
+        int capacity = 16;
+
+        while(capacity < tokens.size() * 4) {
+            capacity *= 2;
+        }
+
+        slots = createSlots(capacity);
+        slotHashes = new int[capacity];
+
+        for(int id = 0; id < tokens.size(); id++) {
+            insert(id);
+        }
+    }
+
+    /**
+     * Create a table without any words
+     */
+    private static int[] createSlots(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+
+        return slots;
+    }
+
+    /**
+     * Hash the lower cased letters between start and end of the text
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 1;
+
+        for(int i = start; i < end; i++) {
+            hash = hash * 31 + toLowerCase(text.charAt(i));
+        }
+
+        hash *= 0x9E3779B9;
+
+        return hash ^ (hash >>> 16);
+    }
+}
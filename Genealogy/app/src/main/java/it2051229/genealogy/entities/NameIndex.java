@@ -0,0 +1,223 @@
+package it2051229.genealogy.entities;
+
+import java.util.Arrays;
+
+/**
+ * Finds a person by name. The table holds person ids directly and is probed one slot after the
+ * other, a slot matches when the person's word ids are the ones being looked for. The typed name
+ * is hashed through the ids of its words, which are lower cased and split on the fly, so a lookup
+ * never builds a String.
+ */
+class NameIndex {
+    private static final int EMPTY = -1;
+    private static final int REMOVED = -2;
+
+    private PersonStore store;
+
+    // Ids of the people and the hash of their names, so most slots are skipped without looking at
+    // the names
+    private int[] slots;
+    private int[] slotHashes;
+
+    // Slots holding a person or a removed marker
+    private int usedSlots;
+
+    /**
+     * Create an index of everyone in the store
+     */
+    public NameIndex(PersonStore store) {
+        this.store = store;
+
+        int capacity = 16;
+
+        while(capacity < store.count() * 2) {
+            capacity *= 2;
+        }
+
+        slots = new int[capacity];
+        slotHashes = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+
+        for(int id = 0; id < store.size(); id++) {
+            if(store.exists(id)) {
+                add(id);
+            }
+        }
+    }
+
+    /**
+     * Index the name of the person, the name must not be taken
+     */
+    public void add(int id) {
+        // Keep at least half of the slots empty so probing stays short
+        if((usedSlots + 1) * 2 > slots.length) {
+            resize();
+        }
+
+        int hash = hashOf(id);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while(slots[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        if(slots[slot] == EMPTY) {
+            usedSlots++;
+        }
+
+        slots[slot] = id;
+        slotHashes[slot] = hash;
+    }
+
+    /**
+     * Remove the person from the index, done before the name in the store changes
+     */
+    public void remove(int id) {
+        int mask = slots.length - 1;
+        int slot = hashOf(id) & mask;
+
+        while(slots[slot] != EMPTY) {
+            if(slots[slot] == id) {
+                slots[slot] = REMOVED;
+                return;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Find the id of the person with the name in any case and spacing, PersonStore.NONE if nobody
+     * has it. The words are looked up where they are in the text so nothing is allocated
+     */
+    public int find(CharSequence name) {
+        NameDictionary dictionary = store.getDictionary();
+        int end = NameDictionary.nameEnd(name);
+        int hash = 1;
+        int length = 0;
+
+        for(int start = NameDictionary.nameStart(name); start < end; start++) {
+            if(name.charAt(start) == ' ') {
+                continue;
+            }
+
+            int wordEnd = NameDictionary.wordEnd(name, start, end);
+            int token = dictionary.find(name, start, wordEnd);
+
+            // A word never used can't be part of any name
+            if(token == -1) {
+                return PersonStore.NONE;
+            }
+
+            hash = hash * 31 + token;
+            length++;
+            start = wordEnd;
+        }
+
+        if(length == 0) {
+            return PersonStore.NONE;
+        }
+
+        hash = spread(hash);
+
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while(slots[slot] != EMPTY) {
+            int id = slots[slot];
+
+            if(id >= 0 && slotHashes[slot] == hash && store.getNameLength(id) == length && hasWords(id, name, end)) {
+                return id;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return PersonStore.NONE;
+    }
+
+    /**
+     * Check if the words of the text are the words in the name of the person
+     */
+    private boolean hasWords(int id, CharSequence name, int end) {
+        NameDictionary dictionary = store.getDictionary();
+        int i = 0;
+
+        for(int start = NameDictionary.nameStart(name); start < end; start++) {
+            if(name.charAt(start) == ' ') {
+                continue;
+            }
+
+            int wordEnd = NameDictionary.wordEnd(name, start, end);
+
+            if(!dictionary.matches(store.getNameToken(id, i++), name, start, wordEnd)) {
+                return false;
+            }
+
+            start = wordEnd;
+        }
+
+        return true;
+    }
+
+    /**
+     * Double the table, dropping the removed markers
+     */
+    private void resize() {
+        int[] oldSlots = slots;
+        int capacity = slots.length;
+
+        // Only grow when there are enough people, otherwise clearing the markers is enough
+        while(capacity < (count(oldSlots) + 1) * 4) {
+            capacity *= 2;
+        }
+
+        slots = new int[capacity];
+        slotHashes = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        usedSlots = 0;
+
+        for(int id : oldSlots) {
+            if(id >= 0) {
+                add(id);
+            }
+        }
+    }
+
+    /**
+     * Count the people in the slots
+     */
+    private static int count(int[] slots) {
+        int count = 0;
+
+        for(int id : slots) {
+            if(id >= 0) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Hash the words of the person's name
+     */
+    private int hashOf(int id) {
+        int hash = 1;
+
+        for(int i = 0; i < store.getNameLength(id); i++) {
+            hash = hash * 31 + store.getNameToken(id, i);
+        }
+
+        return spread(hash);
+    }
+
+    /**
+     * Mix the high bits into the low ones used for the slot
+     */
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
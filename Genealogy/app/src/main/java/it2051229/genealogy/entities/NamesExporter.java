@@ -0,0 +1,121 @@
+package it2051229.genealogy.entities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Writes everyone in the genealogy to a file in the format of a codec. The people are copied
+ * under the read lock, which only copies the columns of the store, and the copy is gone through
+ * by id so no names or people are collected first. The text is gathered in a large buffer and
+ * written in blocks. The file is written under another name and only takes the place of the old
+ * export once complete, so a failed or cancelled export leaves the old one as it was.
+ */
+public class NamesExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PEOPLE_PER_PROGRESS = 4096;
+
+    private volatile boolean cancelled;
+
+    // Reused to hand the buffer to the writer
+    private char[] chars = new char[0];
+
+    /**
+     * Stop the export going on, write returns false
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Write the genealogy to the file, false if the export was cancelled. The progress is in
+     * people written over every pass of the codec
+     */
+    public boolean write(Genealogy genealogy, ExportCodec codec, File file, ProgressListener listener) throws IOException {
+        PersonStore store;
+        Lock lock = genealogy.getLock().readLock();
+        lock.lock();
+
+        try {
+            // Edits and saves can go on while the copy is written
+            store = genealogy.getStore().copy();
+        } finally {
+            lock.unlock();
+        }
+
+        File partFile = new File(file.getPath() + ".part");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(partFile), "UTF-8");
+        boolean written = false;
+
+        try {
+            StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 1024);
+            long total = (long)store.count() * codec.getPassCount();
+            long done = 0;
+
+            codec.begin(store, buffer);
+
+            for(int pass = 0; pass < codec.getPassCount(); pass++) {
+                for(int id = 0; id < store.size(); id++) {
+                    if(!store.exists(id)) {
+                        continue;
+                    }
+
+                    codec.writePerson(store, id, pass, buffer);
+
+                    if(buffer.length() >= BUFFER_SIZE) {
+                        flush(buffer, writer);
+                    }
+
+                    if(++done % PEOPLE_PER_PROGRESS == 0) {
+                        if(cancelled) {
+                            return false;
+                        }
+
+                        if(listener != null) {
+                            listener.onProgress(done, total);
+                        }
+                    }
+                }
+
+                codec.endPass(pass, buffer);
+            }
+
+            flush(buffer, writer);
+            writer.close();
+            written = true;
+
+            if(listener != null) {
+                listener.onProgress(total, total);
+            }
+        } finally {
+            if(!written) {
+                writer.close();
+                partFile.delete();
+            }
+        }
+
+        file.delete();
+
+        if(!partFile.renameTo(file)) {
+            throw new IOException("Failed to rename " + partFile + " to " + file);
+        }
+
+        return true;
+    }
+
+    /**
+     * Write out the text gathered and empty the buffer
+     */
+    private void flush(StringBuilder buffer, Writer writer) throws IOException {
+        if(chars.length < buffer.length()) {
+            chars = new char[buffer.length()];
+        }
+
+        buffer.getChars(0, buffer.length(), chars, 0);
+        writer.write(chars, 0, buffer.length());
+        buffer.setLength(0);
+    }
+}
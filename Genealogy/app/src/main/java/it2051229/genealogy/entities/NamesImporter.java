@@ -0,0 +1,120 @@
+package it2051229.genealogy.entities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the names and relationships written by the export into a new genealogy. The file is read
+ * once through a large buffer. The names are put straight into a store and found again through
+ * its name index, so every line is looked up once without building a normalized copy. The indexes
+ * of the genealogy are built at the end in one go, and nothing is shared until the whole file was
+ * read, so a failed or cancelled import changes nothing.
+ */
+public class NamesImporter implements GenealogyImporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LINES_PER_PROGRESS = 4096;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Stop the import going on, read returns null
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Read the file into a new genealogy, null if the import was cancelled. The progress is in bytes
+     * of the file. Names found twice are kept once, relatives that aren't in the names are left out
+     */
+    @Override
+    public Genealogy read(File file, ProgressListener listener) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), BUFFER_SIZE);
+
+            PersonStore store = new PersonStore();
+            NameIndex nameIndex = new NameIndex(store);
+            long totalBytes = channel.size();
+            int lines = 0;
+            int nextProgress = LINES_PER_PROGRESS;
+            String line;
+
+            // The names come first, until a blank line
+            while((line = reader.readLine()) != null && !line.isEmpty()) {
+                if(NameDictionary.nameStart(line) < NameDictionary.nameEnd(line) && nameIndex.find(line) == PersonStore.NONE) {
+                    nameIndex.add(store.add(line));
+                }
+
+                if(++lines >= nextProgress) {
+                    nextProgress += LINES_PER_PROGRESS;
+
+                    if(!progress(listener, channel, totalBytes)) {
+                        return null;
+                    }
+                }
+            }
+
+            // Then every person takes 5 lines: name, spouse, dad, mom and notes with '|' for new lines
+            while((line = reader.readLine()) != null) {
+                int id = nameIndex.find(line);
+                int spouse = nameIndex.find(nextLine(reader));
+                int dad = nameIndex.find(nextLine(reader));
+                int mom = nameIndex.find(nextLine(reader));
+                String notes = nextLine(reader);
+
+                if(id != PersonStore.NONE) {
+                    store.setSpouse(id, spouse);
+                    store.setDad(id, dad);
+                    store.setMom(id, mom);
+                    store.setNotes(id, notes.replace('|', '\n'));
+                }
+
+                lines += 5;
+
+                if(lines >= nextProgress) {
+                    nextProgress += LINES_PER_PROGRESS;
+
+                    if(!progress(listener, channel, totalBytes)) {
+                        return null;
+                    }
+                }
+            }
+
+            if(listener != null) {
+                listener.onProgress(totalBytes, totalBytes);
+            }
+
+            return new Genealogy(store);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a line of a person's relationships, a cut short file ends with empty lines
+     */
+    private static String nextLine(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        return line == null ? "" : line;
+    }
+
+    /**
+     * Tell the listener how far the reading got, false if the import was cancelled
+     */
+    private boolean progress(ProgressListener listener, FileChannel channel, long totalBytes) throws IOException {
+        if(listener != null) {
+            // The channel is ahead of the lines by at most the buffer
+            listener.onProgress(channel.position(), totalBytes);
+        }
+
+        return !cancelled;
+    }
+}
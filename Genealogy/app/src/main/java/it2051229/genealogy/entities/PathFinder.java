@@ -0,0 +1,240 @@
+package it2051229.genealogy.entities;
+
+/**
+ * Finds shortest paths in a graph where every edge weighs the same. The search grows from both
+ * people at once and stops when the two sides meet, so only the nodes near the path are visited.
+ * The buffers are reused between searches so a path finder must only be used by one thread at a time,
+ * the graph keeps a pool of them for concurrent queries.
+ */
+public class PathFinder {
+    private Graph graph;
+
+    // A node is seen by a side if its stamp equals the stamp of the current search
+    private int stamp;
+    private int[] forwardStamps;
+    private int[] backwardStamps;
+
+    private int[] forwardDistances;
+    private int[] backwardDistances;
+
+    // Forward side points back to the source, backward side points ahead to the destination
+    private int[] previous;
+    private byte[] relationshipWithPrevious;
+    private int[] next;
+    private byte[] relationshipWithNext;
+
+    private int[] forwardQueue;
+    private int[] backwardQueue;
+    private int[] path;
+
+    // The best edge found so far where both sides meet
+    private int meetingFrom;
+    private int meetingTo;
+    private byte meetingRelationship;
+    private int meetingLength;
+
+    /**
+     * Create the buffers needed to search the graph
+     */
+    public PathFinder(Graph graph) {
+        this.graph = graph;
+
+        int size = graph.size();
+
+        forwardStamps = new int[size];
+        backwardStamps = new int[size];
+        forwardDistances = new int[size];
+        backwardDistances = new int[size];
+        previous = new int[size];
+        relationshipWithPrevious = new byte[size];
+        next = new int[size];
+        relationshipWithNext = new byte[size];
+        forwardQueue = new int[size];
+        backwardQueue = new int[size];
+        path = new int[size];
+    }
+
+    /**
+     * Get the shortest path going from one node to another in the same format as the graph
+     */
+    public String getShortestPath(int source, int destination) {
+        int length = search(source, destination);
+
+        if(length <= 0) {
+            return "";
+        }
+
+        // Define the path, lines are listed starting from the destination going back to the source
+        StringBuilder result = new StringBuilder();
+
+        for(int i = length; i > 0; i--) {
+            result.append(graph.getName(path[i]))
+                    .append(" (").append(Graph.getRelationshipName(relationshipInto(i))).append(" of) ")
+                    .append(graph.getName(path[i - 1])).append("\n");
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Search for the shortest path and store it in the path buffer, returns the number of edges
+     * in the path or -1 if there is no path
+     */
+    private int search(int source, int destination) {
+        if(source == destination) {
+            return 0;
+        }
+
+        nextStamp();
+
+        forwardStamps[source] = stamp;
+        forwardDistances[source] = 0;
+        forwardQueue[0] = source;
+
+        backwardStamps[destination] = stamp;
+        backwardDistances[destination] = 0;
+        backwardQueue[0] = destination;
+
+        int forwardHead = 0;
+        int forwardTail = 1;
+        int backwardHead = 0;
+        int backwardTail = 1;
+
+        meetingLength = Integer.MAX_VALUE;
+
+        // Grow the smaller side one whole level at a time until the sides meet
+        while(forwardHead < forwardTail && backwardHead < backwardTail) {
+            if(forwardTail - forwardHead <= backwardTail - backwardHead) {
+                int levelEnd = forwardTail;
+
+                while(forwardHead < levelEnd) {
+                    forwardTail = expandForward(forwardQueue[forwardHead++], forwardTail);
+                }
+            } else {
+                int levelEnd = backwardTail;
+
+                while(backwardHead < levelEnd) {
+                    backwardTail = expandBackward(backwardQueue[backwardHead++], backwardTail);
+                }
+            }
+
+            if(meetingLength != Integer.MAX_VALUE) {
+                return tracePath(source);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Visit the edges going out of a node on the source side
+     */
+    private int expandForward(int node, int tail) {
+        for(int edge = graph.offsets[node]; edge < graph.offsets[node + 1]; edge++) {
+            int adjacentNode = graph.targets[edge];
+
+            if(backwardStamps[adjacentNode] == stamp) {
+                meet(node, adjacentNode, graph.relationships[edge]);
+            } else if(forwardStamps[adjacentNode] != stamp) {
+                forwardStamps[adjacentNode] = stamp;
+                forwardDistances[adjacentNode] = forwardDistances[node] + 1;
+                previous[adjacentNode] = node;
+                relationshipWithPrevious[adjacentNode] = graph.relationships[edge];
+                forwardQueue[tail++] = adjacentNode;
+            }
+        }
+
+        return tail;
+    }
+
+    /**
+     * Visit the edges coming into a node on the destination side
+     */
+    private int expandBackward(int node, int tail) {
+        for(int edge = graph.inOffsets[node]; edge < graph.inOffsets[node + 1]; edge++) {
+            int adjacentNode = graph.sources[edge];
+
+            if(forwardStamps[adjacentNode] == stamp) {
+                meet(adjacentNode, node, graph.inRelationships[edge]);
+            } else if(backwardStamps[adjacentNode] != stamp) {
+                backwardStamps[adjacentNode] = stamp;
+                backwardDistances[adjacentNode] = backwardDistances[node] + 1;
+                next[adjacentNode] = node;
+                relationshipWithNext[adjacentNode] = graph.inRelationships[edge];
+                backwardQueue[tail++] = adjacentNode;
+            }
+        }
+
+        return tail;
+    }
+
+    /**
+     * Keep the edge joining both sides if it makes a shorter path
+     */
+    private void meet(int from, int to, byte relationship) {
+        int length = forwardDistances[from] + 1 + backwardDistances[to];
+
+        if(length < meetingLength) {
+            meetingLength = length;
+            meetingFrom = from;
+            meetingTo = to;
+            meetingRelationship = relationship;
+        }
+    }
+
+    /**
+     * Write the nodes of the path from the source to the destination into the path buffer
+     */
+    private int tracePath(int source) {
+        int index = forwardDistances[meetingFrom];
+
+        for(int node = meetingFrom; index >= 0; node = previous[node]) {
+            path[index--] = node;
+
+            if(node == source) {
+                break;
+            }
+        }
+
+        index = forwardDistances[meetingFrom] + 1;
+
+        for(int node = meetingTo; index <= meetingLength; node = next[node]) {
+            path[index++] = node;
+        }
+
+        return meetingLength;
+    }
+
+    /**
+     * Get the relationship of the edge going into the i-th node of the path
+     */
+    private byte relationshipInto(int i) {
+        int meetingIndex = forwardDistances[meetingFrom] + 1;
+
+        if(i < meetingIndex) {
+            return relationshipWithPrevious[path[i]];
+        }
+
+        if(i == meetingIndex) {
+            return meetingRelationship;
+        }
+
+        return relationshipWithNext[path[i - 1]];
+    }
+
+    /**
+     * Move to a new search, the stamps are only cleared when the counter runs out
+     */
+    private void nextStamp() {
+        stamp++;
+
+        if(stamp == Integer.MAX_VALUE) {
+            for(int i = 0; i < forwardStamps.length; i++) {
+                forwardStamps[i] = 0;
+                backwardStamps[i] = 0;
+            }
+
+            stamp = 1;
+        }
+    }
+}
@@ -1,93 +1,220 @@
 package it2051229.genealogy.entities;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.concurrent.locks.Lock;
 
+/**
+ * A view over one person in the store, the properties themselves are kept in the store's columns
+ * and are read and changed under the store's lock
+ */
 public class Person implements Serializable, Comparable<Person> {
-    private String name;
-    private Person spouse;
-    private Person dad;
-    private Person mom;
-    private String notes;
+    // Keep the saved data readable when the class changes
+    private static final long serialVersionUID = 2926933050040328257L;
+
+    // The properties as they were written before the store existed
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("spouse", Person.class),
+        new ObjectStreamField("dad", Person.class),
+        new ObjectStreamField("mom", Person.class),
+        new ObjectStreamField("notes", String.class)
+    };
+
+    private transient PersonStore store;
+    private transient int id;
+
+    // Name, spouse, dad, mom and notes of a person read from saved data, until it is put in a store
+    private transient Object[] savedProperties;
+
+    /**
+     * Create the view of a person in the store
+     */
+    Person(PersonStore store, int id) {
+        this.store = store;
+        this.id = id;
+    }
 
     /**
-     * Initialize the person properties
+     * Access the person's id in the store
      */
-    public Person(String name) {
-        setName(name);
-        setSpouse(null);
-        setDad(null);
-        setMom(null);
-        setNotes("");
+    public int getId() {
+        return id;
     }
 
     /**
      * Initialize a note for the person
      */
     public void setNotes(String notes) {
-        this.notes = notes;
+        Lock lock = store.getLock().writeLock();
+        lock.lock();
+
+        try {
+            store.setNotes(ownId(), notes);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Access to the person's note
      */
     public String getNotes() {
-        return notes;
-    }
+        if(savedProperties != null) {
+            return (String)savedProperties[4];
+        }
 
-    /**
-     * Initialize the name property
-     */
-    public void setName(String name) {
-        this.name = name;
+        Lock lock = store.getLock().readLock();
+        lock.lock();
+
+        try {
+            return store.getNotes(id);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Access to the name property
      */
     public String getName() {
-        return name;
+        if(savedProperties != null) {
+            return (String)savedProperties[0];
+        }
+
+        Lock lock = store.getLock().readLock();
+        lock.lock();
+
+        try {
+            return store.getName(id);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Initialize the person's spouse
      */
     public void setSpouse(Person person) {
-        spouse = person;
+        Lock lock = store.getLock().writeLock();
+        lock.lock();
+
+        try {
+            store.setSpouse(ownId(), idOf(person));
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Get the person's spouse
      */
     public Person getSpouse() {
-        return spouse;
+        if(savedProperties != null) {
+            return (Person)savedProperties[1];
+        }
+
+        Lock lock = store.getLock().readLock();
+        lock.lock();
+
+        try {
+            return store.getView(store.getSpouse(id));
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Initialize the person's dad
      */
     public void setDad(Person person) {
-        dad = person;
+        Lock lock = store.getLock().writeLock();
+        lock.lock();
+
+        try {
+            store.setDad(ownId(), idOf(person));
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Access the person's dad
      */
     public Person getDad() {
-        return dad;
+        if(savedProperties != null) {
+            return (Person)savedProperties[2];
+        }
+
+        Lock lock = store.getLock().readLock();
+        lock.lock();
+
+        try {
+            return store.getView(store.getDad(id));
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Initialize the person's mom
      */
     public void setMom(Person person) {
-        mom = person;
+        Lock lock = store.getLock().writeLock();
+        lock.lock();
+
+        try {
+            store.setMom(ownId(), idOf(person));
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Access the person's mom
      */
     public Person getMom() {
-        return mom;
+        if(savedProperties != null) {
+            return (Person)savedProperties[3];
+        }
+
+        Lock lock = store.getLock().readLock();
+        lock.lock();
+
+        try {
+            return store.getView(store.getMom(id));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the id of the person to change, a view of someone removed can't be changed
+     */
+    private int ownId() {
+        if(!store.exists(id)) {
+            throw new IllegalStateException("The person was removed");
+        }
+
+        return id;
+    }
+
+    /**
+     * Get the id of a relative or none, the relative must still be in the same store
+     */
+    private int idOf(Person person) {
+        if(person == null) {
+            return PersonStore.NONE;
+        }
+
+        if(person.store != store || !store.exists(person.id)) {
+            throw new IllegalArgumentException("The relative isn't in the same genealogy");
+        }
+
+        return person.id;
     }
 
     /**
@@ -95,6 +222,46 @@ public class Person implements Serializable, Comparable<Person> {
      */
     @Override
     public int compareTo(Person otherPerson) {
-        return name.compareTo(otherPerson.name);
+        // People of the same store are compared without building their names
+        if(savedProperties == null && otherPerson.savedProperties == null && store == otherPerson.store) {
+            Lock lock = store.getLock().readLock();
+            lock.lock();
+
+            try {
+                return store.compareNames(id, otherPerson.id);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        return getName().compareTo(otherPerson.getName());
+    }
+
+    /**
+     * Write the person the same way it was written before the store existed
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("name", getName());
+        fields.put("spouse", getSpouse());
+        fields.put("dad", getDad());
+        fields.put("mom", getMom());
+        fields.put("notes", getNotes());
+        out.writeFields();
+    }
+
+    /**
+     * Keep the saved properties until the genealogy moves them into its store
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+
+        savedProperties = new Object[] {
+            fields.get("name", null),
+            fields.get("spouse", null),
+            fields.get("dad", null),
+            fields.get("mom", null),
+            fields.get("notes", "")
+        };
     }
 }
@@ -0,0 +1,502 @@
+package it2051229.genealogy.entities;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps everyone's properties in columns indexed by a person id. An id is given once and never
+ * reused, so a removed person leaves a hole. Relationships are stored as the id of the relative
+ * or NONE. Names are stored as a run of word ids in a shared pool and only turned into a String
+ * when asked for.
+ */
+class PersonStore implements Serializable {
+    public static final int NONE = -1;
+
+    // Number of ids given so far and how many of them are still in use
+    private int size;
+    private int count;
+
+    private NameDictionary dictionary;
+
+    // The words of a person's name are namePool[nameStarts[id]] until nameStarts[id] + nameLengths[id]
+    private int[] namePool;
+    private int namePoolSize;
+    private int unusedNamePoolSize;
+    private int[] nameStarts;
+    private int[] nameLengths;
+
+    private String[] notes;
+    private int[] dads;
+    private int[] moms;
+    private int[] spouses;
+
+    // One view per id so the same person is always the same object
+    private transient Person[] views;
+    private transient ChangeListener changeListener;
+
+    // Guards the store for the genealogy and the views
+    private transient ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Create an empty store
+     */
+    public PersonStore() {
+        dictionary = new NameDictionary();
+        namePool = new int[64];
+        allocate(16);
+    }
+
+    /**
+     * Make room for the given number of ids
+     */
+    private void allocate(int capacity) {
+        nameStarts = new int[capacity];
+        nameLengths = new int[capacity];
+        notes = new String[capacity];
+        dads = new int[capacity];
+        moms = new int[capacity];
+        spouses = new int[capacity];
+        views = new Person[capacity];
+    }
+
+    /**
+     * Grow the columns when all ids are used
+     */
+    private void ensureCapacity(int capacity) {
+        if(capacity <= nameStarts.length) {
+            return;
+        }
+
+        capacity = Math.max(capacity, nameStarts.length * 2);
+
+        nameStarts = Arrays.copyOf(nameStarts, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        notes = Arrays.copyOf(notes, capacity);
+        dads = Arrays.copyOf(dads, capacity);
+        moms = Arrays.copyOf(moms, capacity);
+        spouses = Arrays.copyOf(spouses, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    /**
+     * Set who gets notified when links or notes change
+     */
+    public void setChangeListener(ChangeListener listener) {
+        changeListener = listener;
+    }
+
+    /**
+     * Access the lock guarding the store
+     */
+    ReentrantReadWriteLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Access the words used by the names
+     */
+    public NameDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Add a person without any relatives and get its id, the name is made uniform as it is stored
+     */
+    public int add(CharSequence name) {
+        ensureCapacity(size + 1);
+
+        int id = size++;
+        setName(id, name);
+        notes[id] = null;
+        dads[id] = NONE;
+        moms[id] = NONE;
+        spouses[id] = NONE;
+        count++;
+
+        return id;
+    }
+
+    /**
+     * Add a person whose name is already broken into the ids of words in the dictionary
+     */
+    int add(int[] tokens, int length) {
+        ensureCapacity(size + 1);
+
+        if(namePoolSize + length > namePool.length) {
+            compactNamePool(length);
+        }
+
+        int id = size++;
+        nameStarts[id] = namePoolSize;
+        nameLengths[id] = length;
+        System.arraycopy(tokens, 0, namePool, namePoolSize, length);
+        namePoolSize += length;
+
+        notes[id] = null;
+        dads[id] = NONE;
+        moms[id] = NONE;
+        spouses[id] = NONE;
+        count++;
+
+        return id;
+    }
+
+    /**
+     * Remove a person after unlinking it from its own relatives, links of other people going to
+     * this person must already be cleared
+     */
+    public void remove(int id) {
+        setDad(id, NONE);
+        setMom(id, NONE);
+        setSpouse(id, NONE);
+
+        unusedNamePoolSize += nameLengths[id];
+        nameLengths[id] = 0;
+        notes[id] = null;
+        count--;
+
+        // Anyone still holding on to the view sees a person without links
+        views[id] = null;
+    }
+
+    /**
+     * Check if the id belongs to a person that wasn't removed
+     */
+    public boolean exists(int id) {
+        return id >= 0 && id < size && nameLengths[id] > 0;
+    }
+
+    /**
+     * Number of ids given so far, including removed ones
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of people
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Get the object representing a person
+     */
+    public synchronized Person getView(int id) {
+        if(id == NONE) {
+            return null;
+        }
+
+        // Synchronized since readers on several threads may make the same view
+        if(views[id] == null) {
+            views[id] = new Person(this, id);
+        }
+
+        return views[id];
+    }
+
+    /**
+     * Build the normalized name of a person, null for removed people
+     */
+    public String getName(int id) {
+        if(nameLengths[id] == 0) {
+            return null;
+        }
+
+        StringBuilder name = new StringBuilder();
+        appendName(id, name);
+
+        return name.toString();
+    }
+
+    /**
+     * Append the normalized name of a person without building a String, nothing for removed people
+     */
+    public void appendName(int id, StringBuilder builder) {
+        for(int i = 0; i < nameLengths[id]; i++) {
+            if(i > 0) {
+                builder.append(' ');
+            }
+
+            dictionary.appendNormalized(namePool[nameStarts[id] + i], builder);
+        }
+    }
+
+    /**
+     * Number of words in the name of a person
+     */
+    public int getNameLength(int id) {
+        return nameLengths[id];
+    }
+
+    /**
+     * Access the id of the i-th word in the name of a person
+     */
+    public int getNameToken(int id, int i) {
+        return namePool[nameStarts[id] + i];
+    }
+
+    /**
+     * Compare the names of 2 people the same way as their Strings would be compared, without
+     * building them
+     */
+    public int compareNames(int a, int b) {
+        for(int i = 0; i < nameLengths[a] && i < nameLengths[b]; i++) {
+            int tokenA = namePool[nameStarts[a] + i];
+            int tokenB = namePool[nameStarts[b] + i];
+
+            if(tokenA == tokenB) {
+                continue;
+            }
+
+            String wordA = dictionary.get(tokenA);
+            String wordB = dictionary.get(tokenB);
+            int length = Math.min(wordA.length(), wordB.length());
+
+            // The first letter is upper cased in the names
+            for(int j = 0; j < length; j++) {
+                char letterA = j == 0 ? Character.toUpperCase(wordA.charAt(j)) : wordA.charAt(j);
+                char letterB = j == 0 ? Character.toUpperCase(wordB.charAt(j)) : wordB.charAt(j);
+
+                if(letterA != letterB) {
+                    return letterA - letterB;
+                }
+            }
+
+            // One word starts the other, so the shorter one is followed by a space or the end of its name
+            if(wordA.length() < wordB.length()) {
+                return i + 1 < nameLengths[a] ? ' ' - wordB.charAt(length) : -1;
+            }
+
+            return i + 1 < nameLengths[b] ? wordA.charAt(length) - ' ' : 1;
+        }
+
+        return nameLengths[a] - nameLengths[b];
+    }
+
+    /**
+     * Change the name of a person, the words are made uniform as they are stored
+     */
+    public void setName(int id, CharSequence name) {
+        int end = NameDictionary.nameEnd(name);
+
+        // The old words are left in the pool until there are too many of them
+        unusedNamePoolSize += nameLengths[id];
+        nameLengths[id] = 0;
+
+        // There can't be more words than every other letter
+        int maxTokens = (end + 1) / 2;
+
+        if(namePoolSize + maxTokens > namePool.length) {
+            compactNamePool(maxTokens);
+        }
+
+        nameStarts[id] = namePoolSize;
+
+        for(int start = NameDictionary.nameStart(name); start < end; start++) {
+            if(name.charAt(start) == ' ') {
+                continue;
+            }
+
+            int wordEnd = NameDictionary.wordEnd(name, start, end);
+
+            namePool[namePoolSize++] = dictionary.add(name, start, wordEnd);
+            nameLengths[id]++;
+
+            start = wordEnd;
+        }
+    }
+
+    /**
+     * Drop the words no longer used by any name from the pool, making room for more words
+     */
+    private void compactNamePool(int extraSize) {
+        int usedSize = namePoolSize - unusedNamePoolSize;
+        int[] pool = namePool;
+
+        // Only allocate when compacting alone doesn't free enough
+        if(usedSize + extraSize > namePool.length / 2) {
+            pool = new int[Math.max(namePool.length * 2, usedSize + extraSize)];
+        }
+
+        int[] order = sortByNameStart();
+        int position = 0;
+
+        for(int id : order) {
+            System.arraycopy(namePool, nameStarts[id], pool, position, nameLengths[id]);
+            nameStarts[id] = position;
+            position += nameLengths[id];
+        }
+
+        namePool = pool;
+        namePoolSize = position;
+        unusedNamePoolSize = 0;
+    }
+
+    /**
+     * Get the ids having a name ordered by where their words are in the pool, so moving the words
+     * to the front never overwrites words not moved yet
+     */
+    private int[] sortByNameStart() {
+        long[] keys = new long[count];
+        int keyCount = 0;
+
+        for(int id = 0; id < size; id++) {
+            if(nameLengths[id] > 0) {
+                keys[keyCount++] = ((long)nameStarts[id] << 32) | id;
+            }
+        }
+
+        Arrays.sort(keys, 0, keyCount);
+
+        int[] order = new int[keyCount];
+
+        for(int i = 0; i < keyCount; i++) {
+            order[i] = (int)keys[i];
+        }
+
+        return order;
+    }
+
+    /**
+     * Access the notes of a person
+     */
+    public String getNotes(int id) {
+        return notes[id] == null ? "" : notes[id];
+    }
+
+    /**
+     * Change the notes of a person, empty notes aren't kept
+     */
+    public void setNotes(int id, String note) {
+        String oldNotes = getNotes(id);
+        notes[id] = note == null || note.isEmpty() ? null : note;
+
+        if(changeListener != null && !oldNotes.equals(getNotes(id))) {
+            changeListener.onNotesChanged(id, oldNotes);
+        }
+    }
+
+    /**
+     * Access the dad of a person
+     */
+    public int getDad(int id) {
+        return dads[id];
+    }
+
+    /**
+     * Change the dad of a person
+     */
+    public void setDad(int id, int dad) {
+        int oldDad = dads[id];
+        dads[id] = dad;
+
+        if(changeListener != null && oldDad != dad) {
+            changeListener.onDadChanged(id, oldDad, dad);
+        }
+    }
+
+    /**
+     * Access the mom of a person
+     */
+    public int getMom(int id) {
+        return moms[id];
+    }
+
+    /**
+     * Change the mom of a person
+     */
+    public void setMom(int id, int mom) {
+        int oldMom = moms[id];
+        moms[id] = mom;
+
+        if(changeListener != null && oldMom != mom) {
+            changeListener.onMomChanged(id, oldMom, mom);
+        }
+    }
+
+    /**
+     * Access the spouse of a person
+     */
+    public int getSpouse(int id) {
+        return spouses[id];
+    }
+
+    /**
+     * Change the spouse of a person
+     */
+    public void setSpouse(int id, int spouse) {
+        int oldSpouse = spouses[id];
+        spouses[id] = spouse;
+
+        if(changeListener != null && oldSpouse != spouse) {
+            changeListener.onSpouseChanged(id, oldSpouse, spouse);
+        }
+    }
+
+    /**
+     * Make an independent copy of everyone, without the views and the listener
+     */
+    PersonStore copy() {
+        PersonStore copy = new PersonStore();
+        copy.size = size;
+        copy.count = count;
+        copy.dictionary = dictionary.copy();
+        copy.namePool = Arrays.copyOf(namePool, namePoolSize);
+        copy.namePoolSize = namePoolSize;
+        copy.unusedNamePoolSize = unusedNamePoolSize;
+        copy.nameStarts = Arrays.copyOf(nameStarts, size);
+        copy.nameLengths = Arrays.copyOf(nameLengths, size);
+        copy.notes = Arrays.copyOf(notes, size);
+        copy.dads = Arrays.copyOf(dads, size);
+        copy.moms = Arrays.copyOf(moms, size);
+        copy.spouses = Arrays.copyOf(spouses, size);
+        copy.views = new Person[size];
+
+        return copy;
+    }
+
+    /**
+     * Only write the ids in use instead of the whole capacity
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if(unusedNamePoolSize > 0) {
+            compactNamePool(0);
+        }
+
+        out.writeInt(size);
+        out.writeInt(count);
+        out.writeObject(dictionary);
+        out.writeObject(Arrays.copyOf(namePool, namePoolSize));
+        out.writeObject(Arrays.copyOf(nameStarts, size));
+        out.writeObject(Arrays.copyOf(nameLengths, size));
+        out.writeObject(Arrays.copyOf(notes, size));
+        out.writeObject(Arrays.copyOf(dads, size));
+        out.writeObject(Arrays.copyOf(moms, size));
+        out.writeObject(Arrays.copyOf(spouses, size));
+    }
+
+    /**
+     * Read the ids written by writeObject
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        size = in.readInt();
+        count = in.readInt();
+        dictionary = (NameDictionary)in.readObject();
+        namePool = (int[])in.readObject();
+        namePoolSize = namePool.length;
+        nameStarts = (int[])in.readObject();
+        nameLengths = (int[])in.readObject();
+        notes = (String[])in.readObject();
+        dads = (int[])in.readObject();
+        moms = (int[])in.readObject();
+        spouses = (int[])in.readObject();
+        views = new Person[size];
+        lock = new ReentrantReadWriteLock();
+    }
+}
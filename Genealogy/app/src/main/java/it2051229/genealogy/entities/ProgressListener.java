@@ -0,0 +1,12 @@
+package it2051229.genealogy.entities;
+
+/**
+ * Told how far a long import or export got, on the thread doing it
+ */
+public interface ProgressListener {
+
+    /**
+     * Called every few thousand lines or people with the amount done so far out of the total
+     */
+    void onProgress(long done, long total);
+}
@@ -0,0 +1,254 @@
+package it2051229.genealogy.entities;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the genealogy on a background thread. Marking the genealogy dirty takes its changes right
+ * away and starts a short wait, everything marked during the wait is written at once, so a burst
+ * of edits costs one write. Flushing writes everything marked before returning, and is meant for
+ * when the app may be stopped. How long the writes take and how many saves were waiting are kept
+ * so the wait can be tuned.
+ */
+public class SaveScheduler {
+    /**
+     * Default milliseconds to wait for more edits before writing
+     */
+    public static final long DEFAULT_DELAY = 500;
+
+    private GenealogyStorage storage;
+    private long delay;
+    private ScheduledExecutorService executor;
+
+    // Saves waiting to be written, oldest first, and the write that will pick them up
+    private ArrayList<GenealogyStorage.Save> queue = new ArrayList<>();
+    private ScheduledFuture<?> scheduledWrite;
+
+    // Statistics of the writes, times are in nanoseconds
+    private int writeCount;
+    private int failedWriteCount;
+    private long totalWriteTime;
+    private long lastWriteTime;
+    private long maxWriteTime;
+    private int maxQueueDepth;
+    private IOException lastError;
+
+    /**
+     * Create a scheduler writing to the storage after waiting the milliseconds for more edits
+     */
+    public SaveScheduler(GenealogyStorage storage, long delay) {
+        this.storage = storage;
+        this.delay = delay;
+
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            // Writes never keep the app alive on their own
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Genealogy save");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Take the changes of the genealogy and write them after the wait. Taking and queueing are
+     * done together so changes taken on several threads are queued in order
+     */
+    public synchronized void markDirty(Genealogy genealogy) {
+        enqueue(storage.takeChanges(genealogy, false));
+    }
+
+    /**
+     * Take the whole genealogy and write it after the wait, for a genealogy that replaces the
+     * saved one, e.g. after an import
+     */
+    public synchronized void markReplaced(Genealogy genealogy) {
+        enqueue(storage.takeChanges(genealogy, true));
+    }
+
+    /**
+     * Take the changes of the genealogy and write everything waiting before returning
+     */
+    public void flush(Genealogy genealogy) throws IOException {
+        markDirty(genealogy);
+
+        synchronized(this) {
+            if(scheduledWrite != null) {
+                scheduledWrite.cancel(false);
+                scheduledWrite = null;
+            }
+        }
+
+        // Queued behind any write that is going on
+        try {
+            executor.submit(new Callable<Void>() {
+                // Write now instead of after the wait
+                @Override
+                public Void call() throws IOException {
+                    writeQueue();
+                    return null;
+                }
+            }).get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving");
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Stop the background thread once the writes waiting are done
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Add the save to the queue and start the wait if it isn't going on
+     */
+    private synchronized void enqueue(GenealogyStorage.Save save) {
+        if(save == null) {
+            return;
+        }
+
+        queue.add(save);
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+
+        if(scheduledWrite == null) {
+            scheduledWrite = executor.schedule(new Runnable() {
+                // Write everything marked during the wait
+                @Override
+                public void run() {
+                    try {
+                        writeQueue();
+                    } catch(IOException e) {
+                        // Kept in the queue and in lastError, the next write tries again
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write every save in the queue at once, on the background thread. Saves that fail to be
+     * written go back to the front of the queue
+     */
+    private void writeQueue() throws IOException {
+        ArrayList<GenealogyStorage.Save> saves;
+
+        synchronized(this) {
+            scheduledWrite = null;
+
+            if(queue.isEmpty()) {
+                return;
+            }
+
+            saves = queue;
+            queue = new ArrayList<>();
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            storage.write(saves);
+        } catch(IOException e) {
+            synchronized(this) {
+                queue.addAll(0, saves);
+                failedWriteCount++;
+                lastError = e;
+            }
+
+            throw e;
+        }
+
+        long time = System.nanoTime() - start;
+
+        synchronized(this) {
+            writeCount++;
+            totalWriteTime += time;
+            lastWriteTime = time;
+            maxWriteTime = Math.max(maxWriteTime, time);
+        }
+    }
+
+    /**
+     * Number of saves waiting to be written
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Most saves that were waiting at once
+     */
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Number of writes done
+     */
+    public synchronized int getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * Number of writes that failed
+     */
+    public synchronized int getFailedWriteCount() {
+        return failedWriteCount;
+    }
+
+    /**
+     * Nanoseconds the last write took
+     */
+    public synchronized long getLastWriteTime() {
+        return lastWriteTime;
+    }
+
+    /**
+     * Nanoseconds the longest write took
+     */
+    public synchronized long getMaxWriteTime() {
+        return maxWriteTime;
+    }
+
+    /**
+     * Average nanoseconds a write took
+     */
+    public synchronized long getAverageWriteTime() {
+        return writeCount == 0 ? 0 : totalWriteTime / writeCount;
+    }
+
+    /**
+     * Access the error of the last failed write, null if none failed
+     */
+    public synchronized IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Describe the statistics of the writes
+     */
+    @Override
+    public synchronized String toString() {
+        return "Writes: " + writeCount + ", failed: " + failedWriteCount
+                + ", last: " + lastWriteTime / 1000 + " us, average: " + getAverageWriteTime() / 1000
+                + " us, max: " + maxWriteTime / 1000 + " us, queue: " + queue.size()
+                + ", max queue: " + maxQueueDepth;
+    }
+}
@@ -0,0 +1,65 @@
+package it2051229.genealogy.entities;
+
+/**
+ * The text format read back by the import: every name on its own line, a blank line, then 5
+ * lines per person with the name, spouse, dad, mom and the notes with '|' for new lines. A
+ * missing relative is an empty line.
+ */
+public class TextExportCodec extends ExportCodec {
+    public static final String FILE_NAME = "Exported Names.txt";
+
+    /**
+     * Name of the file the export is written to
+     */
+    @Override
+    public String getFileName() {
+        return FILE_NAME;
+    }
+
+    /**
+     * The names come first, then the relationships
+     */
+    @Override
+    int getPassCount() {
+        return 2;
+    }
+
+    /**
+     * Append the name of a person, or all of its relationships
+     */
+    @Override
+    void writePerson(PersonStore store, int id, int pass, StringBuilder out) {
+        store.appendName(id, out);
+        out.append('\n');
+
+        if(pass == 0) {
+            return;
+        }
+
+        appendNameOf(store, store.getSpouse(id), out);
+        appendNameOf(store, store.getDad(id), out);
+        appendNameOf(store, store.getMom(id), out);
+        out.append(store.getNotes(id).replace('\n', '|')).append('\n');
+    }
+
+    /**
+     * The names end with a blank line
+     */
+    @Override
+    void endPass(int pass, StringBuilder out) {
+        if(pass == 0) {
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Append the line with the name of a relative, empty for no one
+     */
+    private static void appendNameOf(PersonStore store, int id, StringBuilder out) {
+        if(id != PersonStore.NONE) {
+            store.appendName(id, out);
+        }
+
+        out.append('\n');
+    }
+}
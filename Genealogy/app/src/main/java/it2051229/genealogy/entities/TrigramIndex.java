@@ -0,0 +1,306 @@
+package it2051229.genealogy.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Filters names by the words they are made of. Every 3 letter piece of a word points to the ids
+ * of the words having it, and every word points to the ids of the people having it. A keyword
+ * without spaces can only be inside one word, so the words are searched first and their people
+ * are the result. A keyword with spaces has to match words next to each other in a name.
+ */
+class TrigramIndex {
+    private PersonStore store;
+    private NameDictionary dictionary;
+
+    // Pieces of the words, the words below indexedTokens are already in here
+    private HashMap<Long, IntList> postings;
+    private int indexedTokens;
+
+    // Sorted ids of the people having each word
+    private IntList[] people;
+
+    /**
+     * Create an index of everyone in the store
+     */
+    public TrigramIndex(PersonStore store) {
+        this.store = store;
+        dictionary = store.getDictionary();
+        postings = new HashMap<>();
+        people = new IntList[Math.max(16, dictionary.size())];
+
+        for(int id = 0; id < store.size(); id++) {
+            if(store.exists(id)) {
+                add(id);
+            }
+        }
+    }
+
+    /**
+     * Index the name of the person
+     */
+    public void add(int id) {
+        indexNewTokens();
+
+        for(int i = 0; i < store.getNameLength(id); i++) {
+            int token = store.getNameToken(id, i);
+
+            if(people[token] == null) {
+                people[token] = new IntList();
+            }
+
+            people[token].addSorted(id);
+        }
+    }
+
+    /**
+     * Remove the person from the index, done before the name in the store changes
+     */
+    public void remove(int id) {
+        for(int i = 0; i < store.getNameLength(id); i++) {
+            people[store.getNameToken(id, i)].removeSorted(id);
+        }
+    }
+
+    /**
+     * Put the pieces of the words added to the dictionary since the last time into the index
+     */
+    private void indexNewTokens() {
+        if(dictionary.size() > people.length) {
+            people = Arrays.copyOf(people, Math.max(dictionary.size(), people.length * 2));
+        }
+
+        for(; indexedTokens < dictionary.size(); indexedTokens++) {
+            String token = dictionary.get(indexedTokens);
+
+            for(int i = 0; i + 3 <= token.length(); i++) {
+                long trigram = trigramAt(token, i);
+                IntList posting = postings.get(trigram);
+
+                if(posting == null) {
+                    posting = new IntList();
+                    postings.put(trigram, posting);
+                }
+
+                posting.addSorted(indexedTokens);
+            }
+        }
+    }
+
+    /**
+     * Get the names containing the lower cased and trimmed keyword, ordered by id
+     */
+    public ArrayList<String> getNamesContaining(String keyword) {
+        String[] parts = keyword.split(" ", -1);
+
+        if(parts.length == 1) {
+            return getNamesOf(getPeopleHaving(getTokensContaining(keyword)));
+        }
+
+        // Words in the middle have to match as a whole, so they are looked up directly
+        int[] middleTokens = new int[parts.length - 2];
+        IntList candidates = null;
+
+        for(int i = 1; i < parts.length - 1; i++) {
+            middleTokens[i - 1] = parts[i].isEmpty() ? -1 : dictionary.find(parts[i]);
+
+            if(middleTokens[i - 1] == -1 || people[middleTokens[i - 1]] == null) {
+                return new ArrayList<>();
+            }
+
+            if(candidates == null || people[middleTokens[i - 1]].size() < candidates.size()) {
+                candidates = people[middleTokens[i - 1]];
+            }
+        }
+
+        String first = parts[0];
+        String last = parts[parts.length - 1];
+
+        // Without words in the middle, go through the people having a word ending like the first part
+        // or starting like the last part, whichever is fewer
+        if(candidates == null) {
+            IntList firstTokens = getTokensContaining(first);
+            IntList lastTokens = getTokensContaining(last);
+            IntList endingTokens = new IntList();
+            IntList startingTokens = new IntList();
+
+            for(int i = 0; i < firstTokens.size(); i++) {
+                if(dictionary.get(firstTokens.get(i)).endsWith(first)) {
+                    endingTokens.add(firstTokens.get(i));
+                }
+            }
+
+            for(int i = 0; i < lastTokens.size(); i++) {
+                if(dictionary.get(lastTokens.get(i)).startsWith(last)) {
+                    startingTokens.add(lastTokens.get(i));
+                }
+            }
+
+            int[] endingPeople = getPeopleHaving(endingTokens);
+            int[] startingPeople = getPeopleHaving(startingTokens);
+            int[] fewest = endingPeople.length < startingPeople.length ? endingPeople : startingPeople;
+
+            candidates = new IntList();
+
+            for(int id : fewest) {
+                candidates.add(id);
+            }
+        }
+
+        ArrayList<String> names = new ArrayList<>();
+
+        for(int i = 0; i < candidates.size(); i++) {
+            int id = candidates.get(i);
+
+            if(hasWordsInARow(id, first, middleTokens, last)) {
+                names.add(store.getName(id));
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Check if the name of the person has a word ending like the first part, followed by the
+     * middle words, followed by a word starting like the last part
+     */
+    private boolean hasWordsInARow(int id, String first, int[] middleTokens, String last) {
+        int length = store.getNameLength(id);
+
+        for(int start = 0; start + middleTokens.length + 2 <= length; start++) {
+            boolean matches = dictionary.get(store.getNameToken(id, start)).endsWith(first);
+
+            for(int i = 0; i < middleTokens.length && matches; i++) {
+                matches = store.getNameToken(id, start + 1 + i) == middleTokens[i];
+            }
+
+            if(matches && dictionary.get(store.getNameToken(id, start + middleTokens.length + 1)).startsWith(last)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the ids of the words containing the lower cased text
+     */
+    private IntList getTokensContaining(String text) {
+        IntList tokens = new IntList();
+
+        // Texts too short to have a piece are checked against every word, there are far fewer
+        // words than names
+        if(text.length() < 3) {
+            for(int token = 0; token < indexedTokens; token++) {
+                if(dictionary.get(token).contains(text)) {
+                    tokens.add(token);
+                }
+            }
+
+            return tokens;
+        }
+
+        // Collect the posting lists of the text, any missing piece means nothing matches
+        int count = text.length() - 2;
+        IntList[] lists = new IntList[count];
+
+        for(int i = 0; i < count; i++) {
+            lists[i] = postings.get(trigramAt(text, i));
+
+            if(lists[i] == null) {
+                return tokens;
+            }
+        }
+
+        // Start from the shortest list so the intersection stays small
+        Arrays.sort(lists, new Comparator<IntList>() {
+            @Override
+            public int compare(IntList a, IntList b) {
+                return a.size() - b.size();
+            }
+        });
+
+        int[] positions = new int[count];
+        IntList shortest = lists[0];
+
+        for(int i = 0; i < shortest.size(); i++) {
+            int token = shortest.get(i);
+            boolean inAll = true;
+
+            // Lists are sorted so each one is walked at most once
+            for(int j = 1; j < count && inAll; j++) {
+                IntList list = lists[j];
+
+                while(positions[j] < list.size() && list.get(positions[j]) < token) {
+                    positions[j]++;
+                }
+
+                inAll = positions[j] < list.size() && list.get(positions[j]) == token;
+            }
+
+            // Having all the pieces doesn't mean they are in the right order
+            if(inAll && dictionary.get(token).contains(text)) {
+                tokens.add(token);
+            }
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Get the sorted ids of the people having any of the words, each id only once
+     */
+    private int[] getPeopleHaving(IntList tokens) {
+        int total = 0;
+
+        for(int i = 0; i < tokens.size(); i++) {
+            IntList list = people[tokens.get(i)];
+            total += list == null ? 0 : list.size();
+        }
+
+        int[] ids = new int[total];
+        int size = 0;
+
+        for(int i = 0; i < tokens.size(); i++) {
+            IntList list = people[tokens.get(i)];
+
+            for(int j = 0; list != null && j < list.size(); j++) {
+                ids[size++] = list.get(j);
+            }
+        }
+
+        // A person having 2 of the words is found twice
+        Arrays.sort(ids);
+        size = 0;
+
+        for(int i = 0; i < ids.length; i++) {
+            if(i == 0 || ids[i] != ids[i - 1]) {
+                ids[size++] = ids[i];
+            }
+        }
+
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * Get the names of the people
+     */
+    private ArrayList<String> getNamesOf(int[] ids) {
+        ArrayList<String> names = new ArrayList<>(ids.length);
+
+        for(int id : ids) {
+            names.add(store.getName(id));
+        }
+
+        return names;
+    }
+
+    /**
+     * Pack the 3 characters starting at the index into one key
+     */
+    private static long trigramAt(String text, int index) {
+        return ((long)text.charAt(index) << 32) | ((long)text.charAt(index + 1) << 16) | text.charAt(index + 2);
+    }
+}
@@ -0,0 +1,154 @@
+package it2051229.genealogy.entities;
+
+import java.util.Arrays;
+
+/**
+ * Maps the cross-references of a GEDCOM file, like I12 in @I12@, to numbers. The letters of every
+ * cross-reference are kept one after the other in a single array and the table is probed one slot
+ * after the other, so an entry costs a few ints instead of a String and a map entry, and a lookup
+ * reads the letters straight from the line without building a String.
+ */
+class XrefTable {
+    private static final int EMPTY = -1;
+
+    // The letters of entry i are letters[starts[i]] until starts[i + 1]
+    private char[] letters = new char[1024];
+    private int[] starts = new int[65];
+    private int[] values = new int[64];
+    private int[] hashes = new int[64];
+    private int size;
+
+    // Entry numbers, or EMPTY
+    private int[] slots;
+
+    /**
+     * Create an empty table
+     */
+    public XrefTable() {
+        slots = new int[128];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * Number of cross-references kept
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of the cross-reference between start and end of the text, PersonStore.NONE
+     * if it was never put
+     */
+    public int find(CharSequence text, int start, int end) {
+        int slot = findSlot(text, start, end);
+        return slots[slot] == EMPTY ? PersonStore.NONE : values[slots[slot]];
+    }
+
+    /**
+     * Keep the number of the cross-reference between start and end of the text, replacing the
+     * number it had
+     */
+    public void put(CharSequence text, int start, int end, int value) {
+        int slot = findSlot(text, start, end);
+
+        if(slots[slot] != EMPTY) {
+            values[slots[slot]] = value;
+            return;
+        }
+
+        if(size + 1 >= values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+            hashes = Arrays.copyOf(hashes, values.length);
+            starts = Arrays.copyOf(starts, values.length + 1);
+        }
+
+        int length = end - start;
+
+        if(starts[size] + length > letters.length) {
+            letters = Arrays.copyOf(letters, Math.max(letters.length * 2, starts[size] + length));
+        }
+
+        for(int i = 0; i < length; i++) {
+            letters[starts[size] + i] = text.charAt(start + i);
+        }
+
+        starts[size + 1] = starts[size] + length;
+        values[size] = value;
+        hashes[size] = hash(text, start, end);
+        slots[slot] = size;
+        size++;
+
+        // Keep at least half of the slots empty so probing stays short
+        if(size * 2 > slots.length) {
+            resize();
+        }
+    }
+
+    /**
+     * Find the slot of the cross-reference, or the empty slot where it would go
+     */
+    private int findSlot(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while(slots[slot] != EMPTY && (hashes[slots[slot]] != hash || !matches(slots[slot], text, start, end))) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Check if the entry is the cross-reference between start and end of the text
+     */
+    private boolean matches(int entry, CharSequence text, int start, int end) {
+        if(starts[entry + 1] - starts[entry] != end - start) {
+            return false;
+        }
+
+        for(int i = start; i < end; i++) {
+            if(letters[starts[entry] + i - start] != text.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Double the slots and put every entry back
+     */
+    private void resize() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY);
+
+        int mask = slots.length - 1;
+
+        for(int entry = 0; entry < size; entry++) {
+            int slot = hashes[entry] & mask;
+
+            while(slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+
+            slots[slot] = entry;
+        }
+    }
+
+    /**
+     * Spread the letters over the slots
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 1;
+
+        for(int i = start; i < end; i++) {
+            hash = hash * 31 + text.charAt(i);
+        }
+
+        hash *= 0x9E3779B9;
+
+        return hash ^ (hash >>> 16);
+    }
+}